@@ -1,5 +1,30 @@
 #!/bin/bash
 
+# Daemon can not read our standard input and resolves paths against its own working directory
+forwardable() {
+  local arg
+  for arg in "$@"; do
+    [ "$arg" = "-" ] && return 1
+  done
+  [ "$daemon_dir" = "$(pwd -P)" ] || [ "$1" = "daemon" ]
+}
+
+# Forward to running daemon, if any
+state="${CLONER_DAEMON_STATE:-$HOME/.config-cloner/daemon}"
+if [ -r "$state" ] && { read -r port token && IFS= read -r daemon_dir; } < "$state" && forwardable "$@" &&
+    { exec 3<>"/dev/tcp/127.0.0.1/$port"; } 2> /dev/null; then
+  { printf '%s\n%s\n%d\n' "$token" "$(pwd -P)" "$#"; printf '%s\0' "$@"; } >&3
+  while IFS= read -r line <&3; do
+    case "$line" in
+      "out "*) printf '%s\n' "${line#out }" ;;
+      "err "*) printf '%s\n' "${line#err }" >&2 ;;
+      "exit "*) exit $(( ${line#exit } & 255 )) ;;
+    esac
+  done
+  echo "Connection to daemon lost, see $state" >&2
+  exit 1
+fi
+
 dir="$( cd "$( dirname "$0" )" && pwd )"
 jar=`ls "$dir"/target/config-cloner-*-jar-with-dependencies.jar 2> /dev/null` || true
 if [ ! -f "$jar" ]; then
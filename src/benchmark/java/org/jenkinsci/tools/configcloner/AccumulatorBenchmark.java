@@ -0,0 +1,45 @@
+package org.jenkinsci.tools.configcloner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoration of accumulated output used when dumping responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccumulatorBenchmark {
+
+    @Param({"2048", "102400", "1048576", "10485760"})
+    public int size;
+
+    private CommandResponse.Accumulator accumulator;
+
+    @Setup
+    public void setUp() {
+
+        accumulator = CommandResponse.accumulate();
+        accumulator.out().print(ConfigCorpus.job(size));
+    }
+
+    @Benchmark
+    public String stdoutPattern() {
+
+        return accumulator.stdout("out > %s");
+    }
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.tools.configcloner;
+
+/**
+ * Synthetic but realistically structured configurations of given size.
+ */
+public final class ConfigCorpus {
+
+    /**
+     * Sizes benchmarks are run with, from small freestyle job to pipeline with huge inline script.
+     */
+    public static final String[] SIZES = {"2048", "102400", "1048576", "10485760"};
+
+    private ConfigCorpus() {}
+
+    public static String job(final int size) {
+
+        final StringBuilder builder = new StringBuilder(size + 1024);
+        builder.append("<?xml version='1.0' encoding='UTF-8'?>\n")
+                .append("<project>\n")
+                .append("  <actions/>\n")
+                .append("  <description>Job Description</description>\n")
+                .append("  <keepDependencies>false</keepDependencies>\n")
+                .append("  <properties>\n")
+                .append("    <hudson.model.ParametersDefinitionProperty>\n")
+                .append("      <parameterDefinitions>\n")
+                .append("        <hudson.model.StringParameterDefinition>\n")
+                .append("          <name>BRANCH</name>\n")
+                .append("          <defaultValue>master</defaultValue>\n")
+                .append("        </hudson.model.StringParameterDefinition>\n")
+                .append("      </parameterDefinitions>\n")
+                .append("    </hudson.model.ParametersDefinitionProperty>\n")
+                .append("  </properties>\n")
+                .append("  <scm class=\"hudson.plugins.git.GitSCM\">\n")
+                .append("    <userRemoteConfigs><hudson.plugins.git.UserRemoteConfig>\n")
+                .append("      <url>git://old.example.com/repo.git</url>\n")
+                .append("    </hudson.plugins.git.UserRemoteConfig></userRemoteConfigs>\n")
+                .append("  </scm>\n")
+                .append("  <assignedNode>old-label</assignedNode>\n")
+                .append("  <builders>\n")
+                .append("    <hudson.tasks.Shell>\n")
+                .append("      <command>#!/bin/bash\n")
+        ;
+
+        final String footer = "</command>\n"
+                + "    </hudson.tasks.Shell>\n"
+                + "  </builders>\n"
+                + "  <publishers/>\n"
+                + "  <buildWrappers/>\n"
+                + "</project>\n"
+        ;
+
+        int line = 0;
+        while (builder.length() + footer.length() < size) {
+
+            builder.append("echo &quot;Step ").append(line).append(" on $NODE_NAME for old-label&quot; &amp;&amp; ")
+                    .append("make -C module-").append(line % 37).append(" test\n")
+            ;
+            line++;
+        }
+
+        return builder.append(footer).toString();
+    }
+
+    public static String node(final int size) {
+
+        final StringBuilder builder = new StringBuilder(size + 1024);
+        builder.append("<?xml version='1.0' encoding='UTF-8'?>\n")
+                .append("<slave>\n")
+                .append("  <name>src-slave</name>\n")
+                .append("  <description>")
+        ;
+
+        final String footer = "</description>\n"
+                + "  <remoteFS>/var/lib/jenkins</remoteFS>\n"
+                + "  <numExecutors>2</numExecutors>\n"
+                + "  <mode>NORMAL</mode>\n"
+                + "  <launcher class=\"hudson.slaves.JNLPLauncher\"/>\n"
+                + "  <label>linux old-label</label>\n"
+                + "  <nodeProperties/>\n"
+                + "</slave>\n"
+        ;
+
+        while (builder.length() + footer.length() < size) {
+
+            builder.append("Slave description line\n");
+        }
+
+        return builder.append(footer).toString();
+    }
+}
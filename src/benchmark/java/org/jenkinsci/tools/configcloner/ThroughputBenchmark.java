@@ -0,0 +1,109 @@
+package org.jenkinsci.tools.configcloner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Clone job from one {@link FakeJenkins} to many others driving {@link Main} end to end.
+ *
+ * Every invocation fans out to all destinations so jobs/sec is the score multiplied by instance count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int instances;
+
+    @Param({"1", "8"})
+    public int parallel;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    @Param({"2048", "1048576"})
+    public int size;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private FakeJenkins source;
+    private final List<FakeJenkins> destinations = new ArrayList<FakeJenkins>();
+    private CLIPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        source = new FakeJenkins()
+                .commandLatency(latencyMillis, TimeUnit.MILLISECONDS)
+                .start()
+                .put("job", "src-job", ConfigCorpus.job(size))
+        ;
+
+        for (int i = 0; i < instances; i++) {
+
+            destinations.add(new FakeJenkins().commandLatency(latencyMillis, TimeUnit.MILLISECONDS).start());
+        }
+
+        pool = new CLIPool(FakeJenkins.cliFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        pool.close();
+
+        int connections = source.connections();
+        for (final FakeJenkins destination: destinations) {
+            connections += destination.connections();
+        }
+        System.out.printf("%nConnections opened: %d for %d instances%n", connections, instances + 1);
+
+        source.close();
+        for (final FakeJenkins destination: destinations) {
+            destination.close();
+        }
+    }
+
+    @Benchmark
+    public CommandResponse cloneJob() {
+
+        final String name = "dst-job-" + counter.incrementAndGet();
+
+        final List<String> args = new ArrayList<String>();
+        args.add("job");
+        args.add("--parallel");
+        args.add(String.valueOf(parallel));
+        args.add(source.locator("src-job"));
+        for (final FakeJenkins destination: destinations) {
+            args.add(destination.locator(name));
+        }
+
+        final CommandResponse.Accumulator response = CommandResponse.accumulate();
+        new Main(response, pool).run(args.toArray(new String[args.size()]));
+
+        if (!response.succeeded()) throw new AssertionError(response.stderr());
+
+        return response;
+    }
+}
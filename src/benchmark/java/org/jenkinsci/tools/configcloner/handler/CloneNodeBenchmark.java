@@ -0,0 +1,50 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.tools.configcloner.ConfigCorpus;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renaming of node in its configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CloneNodeBenchmark {
+
+    @Param({"2048", "102400", "1048576", "10485760"})
+    public int size;
+
+    private final ConfigDestination destination = new ConfigDestination("http://new.example.com/", "dst-slave");
+
+    private CloneNode handler;
+    private String xml;
+
+    @Setup
+    public void setUp() {
+
+        handler = new CloneNode(null);
+        xml = ConfigCorpus.node(size);
+    }
+
+    @Benchmark
+    public String fixupConfig() {
+
+        return handler.fixupConfig(xml, destination);
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.tools.configcloner.ConfigCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Diff of original and transformed configuration printed in dry run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescribeTransformationBenchmark {
+
+    @Param({"2048", "102400", "1048576", "10485760"})
+    public int size;
+
+    private TransferHandler handler;
+    private String original;
+    private String transformed;
+
+    private final PrintStream out = new PrintStream(new OutputStream() {
+        @Override
+        public void write(final int b) {}
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {}
+    });
+
+    @Setup
+    public void setUp() {
+
+        handler = TransferHandlerBenchmark.handler("job", "http://old.example.com/job/job", "http://new.example.com/");
+        original = ConfigCorpus.job(size);
+        transformed = original.replace("module-7 ", "component-7 ");
+    }
+
+    @Benchmark
+    public void describeTransformation() {
+
+        handler.describeTransformation(original, transformed, out);
+    }
+}
@@ -0,0 +1,75 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.tools.configcloner.CLIFactory;
+import org.jenkinsci.tools.configcloner.CLIPool;
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.ConfigCorpus;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transformation of fetched configuration by --expression arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferHandlerBenchmark {
+
+    @Param({"2048", "102400", "1048576", "10485760"})
+    public int size;
+
+    @Param({"1", "5", "20"})
+    public int expressionCount;
+
+    private final ConfigDestination source = new ConfigDestination("http://old.example.com/", "job");
+
+    private TransferHandler handler;
+    private String xml;
+
+    @Setup
+    public void setUp() {
+
+        xml = ConfigCorpus.job(size);
+
+        final List<String> args = new ArrayList<String>();
+        args.add("job");
+        for (int i = 0; i < expressionCount; i++) {
+            args.add("-e");
+            args.add("s/module-" + i + " /component-" + i + " /g");
+        }
+        args.add("http://old.example.com/job/job");
+        args.add("http://new.example.com/");
+
+        handler = handler(args.toArray(new String[args.size()]));
+    }
+
+    @Benchmark
+    public String getXml() {
+
+        return handler.getXml(source, xml, CommandResponse.accumulate());
+    }
+
+    /*package*/ static TransferHandler handler(final String... args) {
+
+        final Main main = new Main(CommandResponse.accumulate(), new CLIPool(CLIFactory.provided()));
+        return (TransferHandler) main.getHandler(args);
+    }
+}
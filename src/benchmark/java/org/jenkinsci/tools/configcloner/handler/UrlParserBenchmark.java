@@ -0,0 +1,66 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.UrlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of command line locators by every handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlParserBenchmark {
+
+    @Param({"job", "view", "node"})
+    public String kind;
+
+    @Param({"url", "locator"})
+    public String form;
+
+    private UrlParser parser;
+    private String locator;
+
+    @Setup
+    public void setUp() {
+
+        final TransferHandler handler;
+        if ("job".equals(kind)) {
+            handler = new CloneJob(null);
+            locator = "http://jenkins.example.com/ci/view/All/job/some-job/config.xml";
+        } else if ("view".equals(kind)) {
+            handler = new CloneView(null);
+            locator = "http://jenkins.example.com/ci/view/outer/view/inner/";
+        } else {
+            handler = new CloneNode(null);
+            locator = "http://jenkins.example.com/ci/computer/some-slave/";
+        }
+
+        if ("locator".equals(form)) {
+            locator = "http://jenkins.example.com/ci/::some-entity";
+        }
+
+        parser = handler.urlParser();
+    }
+
+    @Benchmark
+    public ConfigDestination destination() {
+
+        return parser.destination(locator);
+    }
+}
@@ -0,0 +1,81 @@
+package org.jenkinsci.tools.configcloner.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.unix4j.Unix4j;
+import org.unix4j.builder.Unix4jCommandBuilder;
+
+/**
+ * Compare compiled single pass substitutions with Unix4j sed chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SedScriptBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int expressionCount;
+
+    @Param({"100", "10000"})
+    public int lineCount;
+
+    private String xml;
+    private List<String> expressions;
+    private SedScript script;
+
+    @Setup
+    public void setUp() {
+
+        final StringBuilder builder = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<project>\n");
+        for (int i = 0; i < lineCount; i++) {
+            builder.append("  <property name=\"prop").append(i).append("\">value-").append(i % 50).append("</property>\n");
+        }
+        xml = builder.append("</project>\n").toString();
+
+        expressions = new ArrayList<String>(expressionCount);
+        for (int i = 0; i < expressionCount; i++) {
+            expressions.add("s/value-" + i + "</replaced-" + i + "</g");
+        }
+
+        script = SedScript.compile(expressions);
+    }
+
+    @Benchmark
+    public String unix4j() {
+
+        Unix4jCommandBuilder builder = Unix4j.fromString(xml);
+        for (String expr: expressions) {
+            builder = builder.sed(expr);
+        }
+
+        return builder.toStringResult();
+    }
+
+    @Benchmark
+    public String compiled() {
+
+        return script.apply(xml);
+    }
+
+    @Benchmark
+    public String compileAndApply() {
+
+        return SedScript.compile(expressions).apply(xml);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit number of commands in flight adapting the limit of every instance to how it copes with the load.
+ *
+ * The limit of an instance is increased additively, by one per window of commands completed, while the limit is
+ * fully used and commands complete in time. It is halved once command fails, exits with
+ * {@link Transport#OVERLOADED} or takes more than {@link #TOLERANCE} times its usual latency, at most once per window of commands in flight. Usual latency is tracked per command name
+ * as commands differ a lot. Limits never exceed the per instance cap and all instances together never run more
+ * commands than the global cap.
+ *
+ * Latency includes time spent waiting for a connection of the underlying transport so the limit settles below the
+ * size of its connection pool.
+ */
+public class AdaptiveLimiter implements Transport {
+
+    public static final int DEFAULT_GLOBAL_LIMIT = 64;
+    public static final int DEFAULT_HOST_LIMIT = 16;
+
+    /*package*/ static final int INITIAL_LIMIT = 2;
+    /*package*/ static final double TOLERANCE = 2;
+
+    /**
+     * Weight of the latest sample in usual latency.
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Samples needed before latency of a command is judged.
+     */
+    private static final int WARM_UP_SAMPLES = 5;
+
+    private final Transport transport;
+    private final Semaphore global;
+    private final int hostLimit;
+    private final ConcurrentMap<JenkinsInstance, Host> hosts = new ConcurrentHashMap<JenkinsInstance, Host>();
+
+    public AdaptiveLimiter(final Transport transport, final int globalLimit, final int hostLimit) {
+
+        if (globalLimit < 1) throw new IllegalArgumentException("Invalid global limit: " + globalLimit);
+        if (hostLimit < 1) throw new IllegalArgumentException("Invalid limit per instance: " + hostLimit);
+
+        this.transport = transport;
+        this.global = new Semaphore(globalLimit, true);
+        this.hostLimit = hostLimit;
+    }
+
+    public int execute(
+            final JenkinsInstance instance,
+            final List<String> command,
+            final InputStream stdin,
+            final OutputStream out,
+            final OutputStream err
+    ) {
+
+        final Host host = host(instance);
+        try {
+
+            host.acquire();
+            try {
+
+                global.acquire();
+            } catch (InterruptedException ex) {
+
+                host.cancel();
+                throw ex;
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        }
+
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+
+            final int ret = transport.execute(instance, command, stdin, out, err);
+            failed = ret == OVERLOADED;
+            return ret;
+        } finally {
+
+            global.release();
+            host.release(command.get(0), start, System.nanoTime() - start, failed);
+        }
+    }
+
+    public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {
+
+        transport.warmUp(instances, timeout, unit);
+    }
+
+    /**
+     * Current limit of commands in flight for the instance.
+     */
+    /*package*/ double limit(final JenkinsInstance instance) {
+
+        return host(instance).limit();
+    }
+
+    private Host host(final JenkinsInstance instance) {
+
+        final Host host = hosts.get(instance);
+        if (host != null) return host;
+
+        final Host created = new Host();
+        final Host existing = hosts.putIfAbsent(instance, created);
+        return existing == null ? created : existing;
+    }
+
+    private final class Host {
+
+        private final Map<String, Latency> latencies = new HashMap<String, Latency>();
+
+        private double limit = Math.min(INITIAL_LIMIT, hostLimit);
+        private int inFlight = 0;
+
+        /**
+         * Commands started before this time do not reflect the latest decrease.
+         */
+        private long lastDecrease = System.nanoTime();
+
+        private synchronized double limit() {
+
+            return limit;
+        }
+
+        private synchronized void acquire() throws InterruptedException {
+
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+        }
+
+        private synchronized void cancel() {
+
+            inFlight--;
+            notifyAll();
+        }
+
+        private synchronized void release(final String command, final long start, final long latency, final boolean failed) {
+
+            final boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+
+            Latency usual = latencies.get(command);
+            if (usual == null) {
+                usual = new Latency();
+                latencies.put(command, usual);
+            }
+
+            final boolean slow = !failed && usual.samples >= WARM_UP_SAMPLES && latency > TOLERANCE * usual.average;
+            // Let usual latency catch up with lasting slowdown gradually so single outlier does not skew it
+            if (!failed) {
+                usual.add(slow ? (long) (TOLERANCE * usual.average) : latency);
+            }
+
+            if (failed || slow) {
+
+                if (start - lastDecrease > 0) {
+                    limit = Math.max(1, limit / 2);
+                    lastDecrease = System.nanoTime();
+                }
+            } else if (saturated) {
+
+                limit = Math.min(hostLimit, limit + 1 / limit);
+            }
+
+            notifyAll();
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average of command latency.
+     */
+    private static final class Latency {
+
+        private double average;
+        private int samples;
+
+        private void add(final long latency) {
+
+            average = samples == 0 ? latency : average + SMOOTHING * (latency - average);
+            samples++;
+        }
+    }
+}
@@ -40,6 +40,8 @@ public class CLIFactory {
 
     private @CheckForNull String[] keyFiles;
 
+    private volatile @CheckForNull List<KeyPair> keys;
+
     /**
      * Use standard location for ssh keys in the system.
      */
@@ -60,20 +62,46 @@ public class CLIFactory {
 
     public CLI create(final URL destination) throws IOException, InterruptedException {
 
+        final Timings timings = Timings.current();
+        final String host = destination.toString();
+
+        long start = System.nanoTime();
         final CLI service = new CLI(destination);
+        if (timings != null) {
+            timings.record("connect", host, System.nanoTime() - start);
+        }
 
-        final List<KeyPair> userKeys = userKeys();
+        final List<KeyPair> userKeys = keys();
+        start = System.nanoTime();
         try {
 
             service.authenticate(userKeys);
         } catch (GeneralSecurityException ex) {
 
             System.out.printf("Anonymous access to %s: %s%n", destination, ex.getMessage());
+        } finally {
+
+            if (timings != null) {
+                timings.record("authenticate", host, System.nanoTime() - start);
+            }
         }
 
         return service;
     }
 
+    /**
+     * Read keys once so long running processes do not parse them for every connection.
+     */
+    private List<KeyPair> keys() {
+
+        List<KeyPair> ret = keys;
+        if (ret == null) {
+            ret = userKeys();
+            keys = ret;
+        }
+        return ret;
+    }
+
     protected List<KeyPair> userKeys() {
 
         final PrivateKeyProvider provider = new PrivateKeyProvider();
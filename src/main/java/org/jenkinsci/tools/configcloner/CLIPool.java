@@ -24,59 +24,270 @@
 package org.jenkinsci.tools.configcloner;
 
 import java.io.IOException;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import hudson.cli.CLI;
 
 /**
  * Cache CLI connections so they can be reused for multiple requests.
  *
+ * Connections are checked out for exclusive use and returned once the request is done. Every instance has its own
+ * set of connections guarded by its own lock so waiting for a slow instance does not block others.
+ *
  * @author ogondza
  */
 public class CLIPool {
 
+    public static final int DEFAULT_MIN_CONNECTIONS = 1;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
     private final CLIFactory factory;
 
-    private final Map<URL, CLI> pool = new HashMap<URL, CLI>(2);
+    private final int minConnections;
+    private final int maxConnections;
+
+    private final ConcurrentMap<JenkinsInstance, HostPool> pool = new ConcurrentHashMap<JenkinsInstance, HostPool>(2);
 
     public CLIPool(CLIFactory factory) {
+        this(factory, DEFAULT_MIN_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param minConnections Connections opened once the instance is first used.
+     * @param maxConnections Connections that can be checked out at the same time.
+     */
+    public CLIPool(CLIFactory factory, int minConnections, int maxConnections) {
+
+        if (minConnections < 0) throw new IllegalArgumentException(
+                "Negative minimal number of connections: " + minConnections
+        );
+        if (maxConnections < 1 || maxConnections < minConnections) throw new IllegalArgumentException(
+                "Invalid maximal number of connections: " + maxConnections
+        );
+
         this.factory = factory;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
     }
 
     public void close() {
 
-        for(final CLI connection: pool.values()) {
+        for(final HostPool host: pool.values()) {
+
+            host.close();
+        }
+    }
+
+    /**
+     * Get connection for exclusive use.
+     *
+     * Blocks until there is a connection available. Connection needs to be returned using
+     * {@link #release(JenkinsInstance, CLI)}.
+     */
+    public CLI checkout(final JenkinsInstance instance) {
+
+        return host(instance).checkout();
+    }
+
+    /**
+     * Return connection obtained by {@link #checkout(JenkinsInstance)}.
+     */
+    public void release(final JenkinsInstance instance, final CLI connection) {
+
+        host(instance).release(connection);
+    }
+
+    /**
+     * Close broken connection obtained by {@link #checkout(JenkinsInstance)} instead of returning it.
+     */
+    public void discard(final JenkinsInstance instance, final CLI connection) {
+
+        host(instance).discard(connection);
+    }
+
+    /**
+     * Open connections to all instances concurrently.
+     *
+     * @throws HandlerException in case some of the instances can not be connected in time.
+     */
+    public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {
+
+        WarmUp.connect(instances, timeout, unit, new WarmUp.Connector() {
+            public void connect(final JenkinsInstance instance) {
+
+                release(instance, checkout(instance));
+            }
+        });
+    }
+
+    private HostPool host(final JenkinsInstance instance) {
+
+        final HostPool host = pool.get(instance);
+        if (host != null) return host;
+
+        final HostPool created = new HostPool(instance);
+        final HostPool existing = pool.putIfAbsent(instance, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * Connections to single instance.
+     */
+    private final class HostPool {
+
+        private final JenkinsInstance instance;
+
+        private final Deque<CLI> idle = new ArrayDeque<CLI>();
+        private final List<CLI> open = new ArrayList<CLI>();
+        private int connecting = 0;
+        private boolean closed = false;
+
+        private HostPool(final JenkinsInstance instance) {
+            this.instance = instance;
+        }
+
+        private CLI checkout() {
+
+            fill();
+
+            synchronized (this) {
+
+                while (idle.isEmpty() && open.size() + connecting >= maxConnections) {
+
+                    if (closed) throw new IllegalStateException("Connection pool is closed");
+
+                    try {
+
+                        wait();
+                    } catch (InterruptedException ex) {
+
+                        Thread.currentThread().interrupt();
+                        throw new HandlerException(ex);
+                    }
+                }
+
+                if (closed) throw new IllegalStateException("Connection pool is closed");
+
+                if (!idle.isEmpty()) return idle.pop();
+
+                connecting++;
+            }
+
+            return connect();
+        }
+
+        private void release(final CLI connection) {
+
+            synchronized (this) {
+
+                if (!closed) {
+
+                    idle.push(connection);
+                    notifyAll();
+                    return;
+                }
+            }
+
+            // Returned after the pool was closed
+            close(connection);
+        }
+
+        private void discard(final CLI connection) {
+
+            synchronized (this) {
+
+                // Already closed with the pool
+                if (!open.remove(connection)) return;
+
+                notifyAll();
+            }
+
+            close(connection);
+        }
+
+        /**
+         * Make sure there are at least minConnections opened.
+         */
+        private void fill() {
+
+            while (true) {
+
+                synchronized (this) {
+
+                    if (closed || open.size() + connecting >= minConnections) return;
+
+                    connecting++;
+                }
 
+                release(connect());
+            }
+        }
+
+        /**
+         * Create new connection outside of the lock. Caller is expected to increment connecting counter.
+         */
+        private CLI connect() {
+
+            CLI connection = null;
             try {
 
-                connection.close();
-            } catch (Exception ex) {
+                connection = factory.create(instance.url());
+                return connection;
+            } catch (IOException ex) {
 
-                ex.printStackTrace();
+                throw new HandlerException(ex);
+            } catch (InterruptedException ex) {
+
+                Thread.currentThread().interrupt();
+                throw new HandlerException(ex);
+            } finally {
+
+                synchronized (this) {
+
+                    connecting--;
+                    if (connection != null) {
+
+                        open.add(connection);
+                    }
+                    notifyAll();
+                }
             }
         }
-    }
 
-    public CLI connection(final URL instance) {
+        private void close() {
+
+            final List<CLI> connections;
+            synchronized (this) {
 
-        try {
+                closed = true;
+                connections = new ArrayList<CLI>(open);
+                open.clear();
+                idle.clear();
+                notifyAll();
+            }
 
-            final CLI connection = pool.containsKey(instance)
-                    ? pool.get(instance)
-                    : factory.create(instance)
-            ;
+            for(final CLI connection: connections) {
 
-            pool.put(instance, connection);
+                close(connection);
+            }
+        }
 
-            return connection;
-        } catch (IOException ex) {
+        private void close(final CLI connection) {
 
-            throw new HandlerException(ex);
-        } catch (InterruptedException ex) {
+            try {
 
-            throw new HandlerException(ex);
+                connection.close();
+            } catch (Exception ex) {
+
+                ex.printStackTrace();
+            }
         }
     }
 }
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import hudson.cli.CLI;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run commands over remoting based Jenkins CLI using pooled connections.
+ */
+public class CLITransport implements Transport {
+
+    private final CLIPool cliPool;
+
+    public CLITransport(final CLIPool cliPool) {
+        this.cliPool = cliPool;
+    }
+
+    public int execute(
+            final JenkinsInstance instance,
+            final List<String> command,
+            final InputStream stdin,
+            final OutputStream out,
+            final OutputStream err
+    ) {
+
+        final CLI service = cliPool.checkout(instance);
+        boolean broken = true;
+        try {
+
+            final int ret = service.execute(command, stdin, out, err);
+            broken = false;
+            return ret;
+        } finally {
+
+            // Channel failed or was closed by the other side
+            if (broken) {
+                cliPool.discard(instance, service);
+            } else {
+                cliPool.release(instance, service);
+            }
+        }
+    }
+
+    public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {
+
+        cliPool.warmUp(instances, timeout, unit);
+    }
+}
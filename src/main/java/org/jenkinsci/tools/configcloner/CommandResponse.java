@@ -23,12 +23,34 @@
  */
 package org.jenkinsci.tools.configcloner;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CommandResponse {
 
+    /**
+     * Bytes accumulated in memory before the output is spilled to temporary file.
+     */
+    public static final long DEFAULT_SPILL_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
     private int returnCode = -42;
     private final PrintStream outputStream;
     private final PrintStream errorStream;
@@ -75,7 +97,25 @@ public class CommandResponse {
 
     public static Accumulator accumulate() {
 
-        return new Accumulator(new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        return accumulate(spillThreshold);
+    }
+
+    /**
+     * @param threshold Number of bytes kept in memory per stream before it is spilled to temporary file.
+     */
+    public static Accumulator accumulate(final long threshold) {
+
+        return new Accumulator(new Buffer(threshold), new Buffer(threshold));
+    }
+
+    /**
+     * Set threshold used by {@link #accumulate()}.
+     */
+    public static void spillThreshold(final long threshold) {
+
+        if (threshold < 0) throw new IllegalArgumentException("Negative spill threshold: " + threshold);
+
+        spillThreshold = threshold;
     }
 
     public CommandResponse merge(final Accumulator response) {
@@ -83,18 +123,30 @@ public class CommandResponse {
         if (returnCode == 0) {
             returnCode = response.returnCode();
         }
-        outputStream.append(response.stdout());
-        errorStream.append(response.stderr());
+        try {
+
+            response.out.writeTo(outputStream);
+            response.err.writeTo(errorStream);
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        }
 
         return this;
     }
 
-    public static class Accumulator extends CommandResponse{
+    /**
+     * Response collecting output for later use.
+     *
+     * Output exceeding the threshold is spilled to temporary file and read through memory mapping. Call
+     * {@link #close()} once the content is no longer needed to remove the files.
+     */
+    public static class Accumulator extends CommandResponse implements Closeable {
 
-        final ByteArrayOutputStream out;
-        final ByteArrayOutputStream err;
+        final Buffer out;
+        final Buffer err;
 
-        private Accumulator(final ByteArrayOutputStream out, final ByteArrayOutputStream err) {
+        private Accumulator(final Buffer out, final Buffer err) {
 
             super(new PrintStream(out), new PrintStream(err));
 
@@ -104,7 +156,7 @@ public class CommandResponse {
 
         public String stdout() {
 
-            return asString(out);
+            return out.decode();
         }
 
         public String stdout(final String pattern) {
@@ -112,9 +164,41 @@ public class CommandResponse {
             return decorate(out, pattern);
         }
 
+        /**
+         * Standard output as a stream of bytes. The stream reads accumulated data without copying it.
+         */
+        public InputStream stdoutStream() {
+
+            return out.inputStream();
+        }
+
+        /**
+         * Read-only view of bytes accumulated on standard output.
+         */
+        public ByteBuffer stdoutBytes() {
+
+            return out.bytes();
+        }
+
+        /**
+         * Number of bytes accumulated on standard output.
+         */
+        public int stdoutSize() {
+
+            return (int) Math.min(Integer.MAX_VALUE, out.size());
+        }
+
         public String stderr() {
 
-            return asString(err);
+            return err.decode();
+        }
+
+        /**
+         * Read-only view of bytes accumulated on standard error.
+         */
+        public ByteBuffer stderrBytes() {
+
+            return err.bytes();
         }
 
         public String stderr(final String pattern) {
@@ -129,18 +213,29 @@ public class CommandResponse {
             System.out.print(stdout("out > %s"));
         }
 
-        private String decorate(final ByteArrayOutputStream stream, String pattern) {
+        /**
+         * Discard accumulated output removing temporary files, if any.
+         */
+        public void close() {
+
+            out().flush();
+            err().flush();
+            out.close();
+            err.close();
+        }
+
+        private String decorate(final Buffer stream, String pattern) {
 
             if (!pattern.endsWith("\n")) {
 
                 pattern += "\n";
             }
 
-            final String in = asString(stream);
+            final String in = stream.decode();
             if (in.isEmpty()) return "";
 
             final StringBuilder builder = new StringBuilder(in.length());
-            for (final String line: asString(stream).split("\n")) {
+            for (final String line: in.split("\n")) {
 
                 builder.append(String.format(pattern, line));
             }
@@ -148,21 +243,252 @@ public class CommandResponse {
             return builder.toString();
         }
 
-        private String asString(final ByteArrayOutputStream stream) {
+        @Override
+        public Accumulator returnCode(final int ret) {
+
+            return (Accumulator) super.returnCode(ret);
+        }
+    }
+
+    /**
+     * Output kept in memory up to the threshold and in temporary file past it.
+     */
+    private static final class Buffer extends OutputStream {
+
+        private final long threshold;
+
+        private Memory memory = new Memory();
+        private File file;
+        private OutputStream fileStream;
+        private ByteBuffer mapped;
+        private String decoded;
+        private long size = 0;
+        private boolean canSpill = true;
+
+        private Buffer(final long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public synchronized void write(final int b) throws IOException {
+
+            if (file == null && size + 1 > threshold) {
+                spill();
+            }
+
+            if (file == null) {
+                memory.write(b);
+            } else {
+                fileStream.write(b);
+                mapped = null;
+            }
+            decoded = null;
+            size++;
+        }
 
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+
+            if (file == null && size + len > threshold) {
+                spill();
+            }
+
+            if (file == null) {
+                memory.write(b, off, len);
+            } else {
+                fileStream.write(b, off, len);
+                mapped = null;
+            }
+            decoded = null;
+            size += len;
+        }
+
+        /**
+         * Move accumulated bytes to temporary file. Keep accumulating in memory in case it can not be created.
+         */
+        private void spill() {
+
+            if (!canSpill) return;
+
+            File spill = null;
             try {
 
-                return stream.toString("UTF-8");
-            } catch (final UnsupportedEncodingException ex) {
+                spill = File.createTempFile("config-cloner", ".out");
+                SpillFiles.LIVE.add(spill);
+                final OutputStream stream = new BufferedOutputStream(new FileOutputStream(spill), 64 * 1024);
+                memory.writeTo(stream);
+
+                file = spill;
+                fileStream = stream;
+                memory = null;
+            } catch (IOException ex) {
+
+                if (spill != null) {
+                    spill.delete();
+                    SpillFiles.LIVE.remove(spill);
+                }
+                canSpill = false;
+            }
+        }
+
+        private synchronized long size() {
+
+            return size;
+        }
+
+        /**
+         * Read-only view of accumulated bytes.
+         */
+        private synchronized ByteBuffer bytes() {
+
+            if (file == null) return memory.bytes();
 
-                throw new AssertionError(ex);
+            if (mapped == null) {
+
+                try {
+
+                    fileStream.flush();
+                    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    try {
+
+                        mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+                    } finally {
+
+                        raf.close();
+                    }
+                } catch (IOException ex) {
+
+                    throw new HandlerException(new IOException("Unable to read spilled output from " + file, ex));
+                }
+            }
+
+            return mapped.duplicate();
+        }
+
+        private InputStream inputStream() {
+
+            return new ByteBufferInputStream(bytes());
+        }
+
+        /**
+         * Accumulated bytes decoded as UTF-8. Decoded once until more bytes are written.
+         */
+        private synchronized String decode() {
+
+            if (decoded == null) {
+                decoded = UTF_8.decode(bytes()).toString();
+            }
+
+            return decoded;
+        }
+
+        private synchronized void writeTo(final OutputStream target) throws IOException {
+
+            if (file == null) {
+                memory.writeTo(target);
+                return;
+            }
+
+            final ByteBuffer bytes = bytes();
+            final byte[] chunk = new byte[(int) Math.min(64 * 1024, bytes.remaining())];
+            while (bytes.hasRemaining()) {
+
+                final int length = Math.min(chunk.length, bytes.remaining());
+                bytes.get(chunk, 0, length);
+                target.write(chunk, 0, length);
             }
         }
 
         @Override
-        public Accumulator returnCode(final int ret) {
+        public synchronized void close() {
 
-            return (Accumulator) super.returnCode(ret);
+            if (file != null) {
+
+                try {
+
+                    fileStream.close();
+                } catch (IOException ex) {
+
+                    // Deleting anyway
+                }
+
+                mapped = null;
+                file.delete();
+                SpillFiles.LIVE.remove(file);
+                file = null;
+            }
+
+            memory = new Memory();
+            decoded = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Spill files not closed yet, deleted on exit. Unlike {@link File#deleteOnExit()} the set does not grow with
+     * every file spilled by long-running process.
+     */
+    private static final class SpillFiles {
+
+        private static final Set<File> LIVE = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread("config-cloner spill files cleanup") {
+                @Override public void run() {
+
+                    for (final File file: LIVE) {
+                        file.delete();
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class Memory extends ByteArrayOutputStream {
+
+        private synchronized ByteBuffer bytes() {
+
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            final int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+
+            return buffer.remaining();
+        }
+
+        @Override
+        public long skip(final long n) {
+
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
         }
     }
 }
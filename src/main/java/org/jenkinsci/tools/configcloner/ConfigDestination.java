@@ -28,26 +28,37 @@ import java.net.URL;
 
 public class ConfigDestination {
 
-    private final String jenkins;
+    private final JenkinsInstance jenkins;
     private final String entity;
 
     public ConfigDestination(final URL jenkins, final String entity) {
 
-        this(jenkins.toString(), entity);
+        this(new JenkinsInstance(jenkins), entity);
     }
 
     public ConfigDestination(final String jenkins, final String path) {
 
-        if (jenkins == null || jenkins.isEmpty()) throw new IllegalArgumentException(
-                "Empty host provided"
-        );
+        this(parseInstance(jenkins), path);
+    }
 
+    public ConfigDestination(final JenkinsInstance jenkins, final String path) {
+
+        if (jenkins == null) throw new IllegalArgumentException("No host provided");
         if (path == null) throw new IllegalArgumentException("Empty path provided");
 
         this.jenkins = jenkins;
         this.entity = path;
     }
 
+    private static JenkinsInstance parseInstance(final String jenkins) {
+
+        if (jenkins == null || jenkins.isEmpty()) throw new IllegalArgumentException(
+                "Empty host provided"
+        );
+
+        return JenkinsInstance.parse(jenkins);
+    }
+
     public ConfigDestination newEntity(final String entity) {
 
         return new ConfigDestination(jenkins, entity);
@@ -60,18 +71,12 @@ public class ConfigDestination {
 
     public URL jenkins() {
 
-        return getUrl(jenkins);
+        return jenkins.url();
     }
 
-    private static URL getUrl(final String url) {
-
-        try {
-
-            return new URL(url);
-        } catch (final MalformedURLException ex) {
+    public JenkinsInstance instance() {
 
-            throw new AssertionError(ex);
-        }
+        return jenkins;
     }
 
     @Override
@@ -99,7 +104,7 @@ public class ConfigDestination {
     @Override
     public String toString() {
 
-        return jenkins().toString() + "::" + entity();
+        return jenkins.toString() + "::" + entity();
     }
 
     public static ConfigDestination fromString(String locator) throws MalformedURLException {
@@ -23,19 +23,126 @@
  */
 package org.jenkinsci.tools.configcloner;
 
-import hudson.cli.CLI;
-
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class ConfigTransfer {
 
-    private final CLIPool cliPool;
+    private static final String BULK_FETCH_SCRIPT = "// Bulk fetch\n"
+            + "def fetch = { String name, OutputStream out ->\n"
+            + "LOOKUP\n"
+            + "}\n"
+            + "for (String name: args) {\n"
+            + "  def buffer = new ByteArrayOutputStream()\n"
+            + "  def status = 0\n"
+            + "  try {\n"
+            + "    fetch(name, buffer)\n"
+            + "  } catch (Exception ex) {\n"
+            + "    buffer.reset()\n"
+            + "    buffer.write(String.valueOf(ex.message).getBytes('UTF-8'))\n"
+            + "    status = 1\n"
+            + "  }\n"
+            + "  stdout.write((status + ' ' + buffer.size() + '\\n').getBytes('UTF-8'))\n"
+            + "  buffer.writeTo(stdout)\n"
+            + "}\n"
+            + "stdout.flush()\n"
+    ;
+
+    private static final String BULK_SEND_SCRIPT = "// Bulk send\n"
+            + "def write = { String name, InputStream xml, boolean force ->\n"
+            + "STATEMENTS\n"
+            + "}\n"
+            + "def forced = Boolean.parseBoolean(args[0])\n"
+            + "def input = new DataInputStream(new BufferedInputStream(stdin))\n"
+            + "def readHeader = {\n"
+            + "  def header = new ByteArrayOutputStream()\n"
+            + "  int b\n"
+            + "  while ((b = input.read()) != 10) {\n"
+            + "    if (b == -1) return null\n"
+            + "    header.write(b)\n"
+            + "  }\n"
+            + "  return header.toString('UTF-8')\n"
+            + "}\n"
+            + "def header\n"
+            + "while ((header = readHeader()) != null) {\n"
+            + "  def lengths = header.split(' ')\n"
+            + "  def name = new byte[lengths[0] as int]\n"
+            + "  input.readFully(name)\n"
+            + "  def xml = new byte[lengths[1] as int]\n"
+            + "  input.readFully(xml)\n"
+            + "  def message = ''\n"
+            + "  def status = 0\n"
+            + "  try {\n"
+            + "    write(new String(name, 'UTF-8'), new ByteArrayInputStream(xml), forced)\n"
+            + "  } catch (Exception ex) {\n"
+            + "    message = String.valueOf(ex.message)\n"
+            + "    status = 1\n"
+            + "  }\n"
+            + "  def bytes = message.getBytes('UTF-8')\n"
+            + "  stdout.write((status + ' ' + bytes.length + '\\n').getBytes('UTF-8'))\n"
+            + "  stdout.write(bytes)\n"
+            + "}\n"
+            + "stdout.flush()\n"
+    ;
+
+    private final Transport transport;
+
+    private final @CheckForNull ListeningExecutorService executor;
+
+    private final Timings timings;
 
     public ConfigTransfer(final CLIPool cliPool) {
-        this.cliPool = cliPool;
+        this(new CLITransport(cliPool));
+    }
+
+    public ConfigTransfer(final Transport transport) {
+        this(transport, new Timings(), null);
+    }
+
+    /**
+     * @param timings Timings to record latency of operations to.
+     * @param executor Executor to run asynchronous operations on, shared one when null.
+     */
+    public ConfigTransfer(
+            final Transport transport,
+            final Timings timings,
+            final @CheckForNull ExecutorService executor
+    ) {
+        this.transport = transport;
+        this.executor = executor == null ? null : MoreExecutors.listeningDecorator(executor);
+        this.timings = timings;
+    }
+
+    /**
+     * Timings of operations performed using this instance.
+     */
+    public Timings timings() {
+        return timings;
     }
 
     public CommandResponse.Accumulator execute(
@@ -44,11 +151,230 @@ public class ConfigTransfer {
             final String... command
     ) {
 
-        final CLI service = cliPool.connection(destination.jenkins());
+        return execute(destination, inputStream(stdin), command);
+    }
+
+    /**
+     * Execute command reading its standard input from a stream.
+     */
+    public CommandResponse.Accumulator execute(
+            final ConfigDestination destination,
+            final InputStream stdin,
+            final String... command
+    ) {
+
+        final JenkinsInstance instance = destination.instance();
+        final Timings previous = Timings.enter(timings);
+        final long start = System.nanoTime();
+        try {
+
+            final CommandResponse.Accumulator response = CommandResponse.accumulate();
+            final int ret = transport.execute(instance, Arrays.asList(command), stdin, response.out(), response.err());
+            return response.returnCode(ret);
+        } finally {
 
-        final CommandResponse.Accumulator response = CommandResponse.accumulate();
-        final int ret = service.execute(Arrays.asList(command), inputStream(stdin), response.out(), response.err());
-        return response.returnCode(ret);
+            timings.record(command[0], instance.toString(), System.nanoTime() - start);
+            Timings.restore(previous);
+        }
+    }
+
+    /**
+     * Fetch configurations of many entities from one instance using single groovy command.
+     *
+     * The script writes a <tt>STATUS LENGTH</tt> header line followed by LENGTH bytes of configuration, or of error
+     * message when STATUS is not 0, for every entity in the order requested.
+     *
+     * @param lookup Groovy statements writing configuration of entity <tt>name</tt> to OutputStream <tt>out</tt>.
+     *     Throw when the entity can not be fetched.
+     * @return Response per entity or null when the instance can not run the script.
+     */
+    public @CheckForNull Map<String, CommandResponse.Accumulator> fetchAll(
+            final JenkinsInstance instance,
+            final String lookup,
+            final List<String> names
+    ) {
+
+        final List<String> command = new ArrayList<String>(names.size() + 2);
+        command.add("groovy");
+        command.add("=");
+        command.addAll(names);
+
+        final String script = BULK_FETCH_SCRIPT.replace("LOOKUP", lookup);
+        final CommandResponse.Accumulator rsp = execute(
+                new ConfigDestination(instance, ""), script, command.toArray(new String[command.size()])
+        );
+        try {
+
+            if (!rsp.succeeded()) return null;
+
+            return parseBulk(names, rsp.stdoutBytes());
+        } finally {
+
+            rsp.close();
+        }
+    }
+
+    /**
+     * Create or update configurations of many entities on one instance using single groovy command.
+     *
+     * The script is passed as a file the CLI reads on behalf of the instance so standard input can carry a
+     * <tt>NAME_LENGTH XML_LENGTH</tt> header line followed by the bytes of the name and the configuration for every
+     * entity. The script answers with the same stream {@link #fetchAll} does, error message being the content.
+     * Failure of one entity does not prevent others from being written.
+     *
+     * @param statements Groovy statements writing configuration read from InputStream <tt>xml</tt> to entity
+     *     <tt>name</tt>. Existing entity is to be updated if <tt>force</tt> is true, rejected otherwise.
+     * @return Response per entity or null when the instance can not run the script.
+     */
+    public @CheckForNull Map<String, CommandResponse.Accumulator> sendAll(
+            final JenkinsInstance instance,
+            final String statements,
+            final boolean force,
+            final Map<String, String> configs
+    ) {
+
+        try {
+
+            final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            for (final Map.Entry<String, String> config: configs.entrySet()) {
+
+                final byte[] name = config.getKey().getBytes("UTF-8");
+                final byte[] xml = config.getValue().getBytes("UTF-8");
+                payload.write((name.length + " " + xml.length + "\n").getBytes("UTF-8"));
+                payload.write(name);
+                payload.write(xml);
+            }
+
+            final File script = File.createTempFile("bulk-send", ".groovy");
+            try {
+
+                final OutputStream out = new FileOutputStream(script);
+                try {
+
+                    out.write(BULK_SEND_SCRIPT.replace("STATEMENTS", statements).getBytes("UTF-8"));
+                } finally {
+
+                    out.close();
+                }
+
+                final CommandResponse.Accumulator rsp = execute(
+                        new ConfigDestination(instance, ""),
+                        new ByteArrayInputStream(payload.toByteArray()),
+                        "groovy", script.getAbsolutePath(), String.valueOf(force)
+                );
+                try {
+
+                    if (!rsp.succeeded()) return null;
+
+                    return parseBulk(new ArrayList<String>(configs.keySet()), rsp.stdoutBytes());
+                } finally {
+
+                    rsp.close();
+                }
+            } finally {
+
+                script.delete();
+            }
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        }
+    }
+
+    /**
+     * @return null if the stream is malformed.
+     */
+    private static @CheckForNull Map<String, CommandResponse.Accumulator> parseBulk(
+            final List<String> names, final ByteBuffer stream
+    ) {
+
+        final Map<String, CommandResponse.Accumulator> entities = new LinkedHashMap<String, CommandResponse.Accumulator>();
+        final byte[] chunk = new byte[8192];
+        for (final String name: names) {
+
+            final StringBuilder header = new StringBuilder();
+            byte b;
+            while (stream.hasRemaining() && (b = stream.get()) != '\n' && header.length() < 32) {
+                header.append((char) b);
+            }
+
+            final String[] fields = header.toString().split(" ");
+            int status = -1;
+            int length = -1;
+            if (fields.length == 2) {
+                try {
+
+                    status = Integer.parseInt(fields[0]);
+                    length = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException ex) {
+                    // Reported below
+                }
+            }
+
+            if (length < 0 || length > stream.remaining()) {
+
+                for (final CommandResponse.Accumulator entity: entities.values()) {
+                    entity.close();
+                }
+                return null;
+            }
+
+            final CommandResponse.Accumulator entity = CommandResponse.accumulate();
+            final PrintStream target = status == 0 ? entity.out() : entity.err();
+            for (int remaining = length; remaining > 0; remaining -= chunk.length) {
+
+                final int size = Math.min(remaining, chunk.length);
+                stream.get(chunk, 0, size);
+                target.write(chunk, 0, size);
+            }
+
+            if (status != 0) {
+                entity.err().println();
+            }
+            entities.put(name, entity.returnCode(status == 0 ? 0 : -1));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Execute command without blocking the caller.
+     *
+     * The command is run on the executor provided at construction time or on a shared one using virtual threads where
+     * the runtime supports them.
+     */
+    public ListenableFuture<CommandResponse.Accumulator> executeAsync(
+            final ConfigDestination destination,
+            final String stdin,
+            final String... command
+    ) {
+
+        return executor().submit(new Callable<CommandResponse.Accumulator>() {
+            public CommandResponse.Accumulator call() {
+
+                return execute(destination, stdin, command);
+            }
+        });
+    }
+
+    private ListeningExecutorService executor() {
+
+        return executor == null ? DefaultExecutor.INSTANCE : executor;
+    }
+
+    /**
+     * Connect to all instances before they are used so unreachable ones are reported before any modification.
+     */
+    public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {
+
+        final Timings previous = Timings.enter(timings);
+        try {
+
+            transport.warmUp(instances, timeout, unit);
+        } finally {
+
+            Timings.restore(previous);
+        }
     }
 
     private InputStream inputStream(String in) {
@@ -61,4 +387,31 @@ public class ConfigTransfer {
             throw new AssertionError(ex);
         }
     }
+
+    /**
+     * Shared executor created on first use.
+     */
+    private static final class DefaultExecutor {
+
+        private static final ListeningExecutorService INSTANCE = MoreExecutors.listeningDecorator(create());
+
+        private static ExecutorService create() {
+
+            try {
+
+                // Available since Java 21
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception ex) {
+
+                return Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+
+                        final Thread thread = new Thread(r, "config-transfer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+    }
 }
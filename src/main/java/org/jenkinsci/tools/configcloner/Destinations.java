@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Destinations given on command line followed by those read lazily from manifests.
+ *
+ * Manifest is a file, or standard input when named <tt>-</tt>, with one destination locator per line. Blank lines
+ * and lines starting with <tt>#</tt> are ignored. Destinations are deduplicated on the fly. Invalid locators are
+ * reported and skipped so a typo does not abort the transfer halfway through a long manifest.
+ */
+public final class Destinations implements Iterator<ConfigDestination>, Closeable {
+
+    private final UrlParser parser;
+    private final ConfigDestination source;
+    private final Iterator<ConfigDestination> given;
+    private final Iterator<String> manifests;
+    private final InputStream stdin;
+    private final PrintStream err;
+
+    private final Set<ConfigDestination> seen = new HashSet<ConfigDestination>();
+
+    private BufferedReader reader;
+    private String manifest;
+    private int lineNumber;
+    private ConfigDestination next;
+    private boolean failed = false;
+
+    public Destinations(
+            final UrlParser parser,
+            final ConfigDestination source,
+            final List<ConfigDestination> given,
+            final List<String> manifests,
+            final InputStream stdin,
+            final PrintStream err
+    ) {
+        this.parser = parser;
+        this.source = source;
+        this.given = given.iterator();
+        this.manifests = manifests.iterator();
+        this.stdin = stdin;
+        this.err = err;
+    }
+
+    public boolean hasNext() {
+
+        while (next == null) {
+
+            final ConfigDestination candidate = read();
+            if (candidate == null) return false;
+
+            if (seen.add(candidate)) {
+                next = candidate;
+            }
+        }
+
+        return true;
+    }
+
+    public ConfigDestination next() {
+
+        if (!hasNext()) throw new NoSuchElementException();
+
+        final ConfigDestination ret = next;
+        next = null;
+        return ret;
+    }
+
+    public void remove() {
+
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Some of the manifest lines were invalid.
+     */
+    public boolean failed() {
+
+        return failed;
+    }
+
+    public void close() {
+
+        if (reader == null) return;
+
+        try {
+
+            if (!"-".equals(manifest)) {
+                reader.close();
+            }
+        } catch (IOException ex) {
+
+            // Closing anyway
+        } finally {
+
+            reader = null;
+        }
+    }
+
+    private ConfigDestination read() {
+
+        if (given.hasNext()) return given.next();
+
+        try {
+
+            while (true) {
+
+                if (reader == null) {
+
+                    if (!manifests.hasNext()) return null;
+
+                    manifest = manifests.next();
+                    lineNumber = 0;
+                    reader = new BufferedReader(new InputStreamReader(
+                            "-".equals(manifest) ? stdin : new FileInputStream(manifest), "UTF-8"
+                    ));
+                }
+
+                final String line = reader.readLine();
+                if (line == null) {
+                    close();
+                    continue;
+                }
+
+                lineNumber++;
+                final String locator = line.trim();
+                if (locator.isEmpty() || locator.startsWith("#")) continue;
+
+                try {
+
+                    return parser.pair(source, locator);
+                } catch (IllegalArgumentException ex) {
+
+                    err.printf("%s:%d: Invalid destination %s: %s%n", manifest, lineNumber, locator, ex.getMessage());
+                    failed = true;
+                }
+            }
+        } catch (IOException ex) {
+
+            close();
+            throw new HandlerException(new IOException("Unable to read destinations from " + manifest, ex));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/**
+ * Jenkins instance identified by its root URL.
+ *
+ * The URL is parsed and normalized once. Equality is based on normalized form so, unlike {@link URL}, instances can
+ * be compared and hashed without resolving host names.
+ */
+public final class JenkinsInstance {
+
+    private final URL url;
+    private final String key;
+
+    private volatile InetAddress address;
+
+    public static JenkinsInstance parse(final String url) {
+
+        try {
+
+            return new JenkinsInstance(new URL(url));
+        } catch (MalformedURLException ex) {
+
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    public JenkinsInstance(final URL url) {
+
+        if (url == null) throw new IllegalArgumentException("No url provided");
+
+        this.url = url;
+        this.key = normalize(url);
+    }
+
+    private static String normalize(final URL url) {
+
+        final URI uri;
+        try {
+
+            uri = url.toURI().normalize();
+        } catch (URISyntaxException ex) {
+
+            throw new IllegalArgumentException(ex);
+        }
+
+        final String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        final String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ENGLISH);
+
+        int port = uri.getPort();
+        if (port == url.getDefaultPort()) {
+            port = -1;
+        }
+
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        if (!path.endsWith("/")) {
+            path += "/";
+        }
+
+        return scheme + "://" + host + (port == -1 ? "" : ":" + port) + path;
+    }
+
+    /**
+     * URL as provided.
+     */
+    public URL url() {
+
+        return url;
+    }
+
+    /**
+     * Resolved address of the host. Resolved once on first use.
+     */
+    public InetAddress address() throws UnknownHostException {
+
+        InetAddress resolved = address;
+        if (resolved == null) {
+
+            resolved = InetAddress.getByName(url.getHost());
+            address = resolved;
+        }
+
+        return resolved;
+    }
+
+    @Override
+    public int hashCode() {
+
+        return key.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (this == obj) return true;
+
+        if (obj == null) return false;
+
+        if (getClass() != obj.getClass()) return false;
+
+        return key.equals(((JenkinsInstance) obj).key);
+    }
+
+    @Override
+    public String toString() {
+
+        return url.toString();
+    }
+}
@@ -23,55 +23,168 @@
  */
 package org.jenkinsci.tools.configcloner;
 
+import org.jenkinsci.tools.configcloner.handler.Batch;
 import org.jenkinsci.tools.configcloner.handler.CloneJob;
 import org.jenkinsci.tools.configcloner.handler.CloneNode;
 import org.jenkinsci.tools.configcloner.handler.CloneView;
+import org.jenkinsci.tools.configcloner.handler.Daemon;
 import org.jenkinsci.tools.configcloner.handler.Handler;
 import org.jenkinsci.tools.configcloner.handler.InvalidUsage;
+import org.jenkinsci.tools.configcloner.handler.Migrate;
 import org.jenkinsci.tools.configcloner.handler.Recipe;
 import org.jenkinsci.tools.configcloner.handler.Usage;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.annotation.CheckForNull;
+
 public class Main {
 
+    /*package*/ static final String TIMINGS_OPTION = "--timings";
+
     private final CommandResponse response;
+    private final Timings timings;
     private final Handler usage = new Usage(this);
     private final Map<String, Handler> commandMapping = new LinkedHashMap<String, Handler>();
 
     public static void main(final String[] args) {
 
         final CommandResponse resp = CommandResponse.system();
-        String sshKeyLocation = System.getenv("SSH_PRIVATE_KEY");
-        final CLIPool cliPool = new CLIPool(sshKeyLocation == null ?
-                CLIFactory.system() :
-                CLIFactory.provided(sshKeyLocation));
-        final CommandResponse response = new Main(resp, cliPool).run(args);
+        final CLIPool cliPool;
+        final Transport transport;
+        try {
+            final Long spillThreshold = longEnv("CLONER_SPILL_THRESHOLD", 0);
+            if (spillThreshold != null) {
+                CommandResponse.spillThreshold(spillThreshold);
+            }
+
+            String sshKeyLocation = System.getenv("SSH_PRIVATE_KEY");
+            cliPool = new CLIPool(
+                    sshKeyLocation == null ? CLIFactory.system() : CLIFactory.provided(sshKeyLocation),
+                    intEnv("CLONER_CLI_POOL_MIN", CLIPool.DEFAULT_MIN_CONNECTIONS, 0),
+                    intEnv("CLONER_CLI_POOL_MAX", CLIPool.DEFAULT_MAX_CONNECTIONS, 1)
+            );
+            transport = new AdaptiveLimiter(
+                    transport(cliPool),
+                    intEnv("CLONER_MAX_IN_FLIGHT", AdaptiveLimiter.DEFAULT_GLOBAL_LIMIT, 1),
+                    intEnv("CLONER_MAX_IN_FLIGHT_PER_HOST", AdaptiveLimiter.DEFAULT_HOST_LIMIT, 1)
+            );
+        } catch (IllegalArgumentException ex) {
+            resp.err().println(ex.getMessage());
+            System.exit(-1);
+            return;
+        }
+        final CommandResponse response = new Main(resp, transport).run(args);
 
         cliPool.close();
         System.exit(response.returnCode());
     }
 
+    /**
+     * Transport selected by CLONER_TRANSPORT environment variable, <tt>cli</tt> by default.
+     */
+    private static Transport transport(final CLIPool cliPool) {
+
+        final Transport cli = new CLITransport(cliPool);
+        final String name = System.getenv("CLONER_TRANSPORT");
+        if (name == null || "cli".equals(name)) return cli;
+
+        if ("rest".equals(name)) {
+
+            final int maxConnections = intEnv("CLONER_HTTP_POOL_MAX", RestTransport.DEFAULT_MAX_CONNECTIONS, 1);
+
+            // Keep as many idle connections per host as there can be requests in flight. JDK reads the property
+            // once, when the first connection is kept alive, so it is set here for the whole process.
+            if (System.getProperty("http.maxConnections") == null) {
+                System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+            }
+
+            return new RestTransport(
+                    cli,
+                    System.getenv("JENKINS_USER_ID"),
+                    System.getenv("JENKINS_API_TOKEN"),
+                    maxConnections
+            );
+        }
+
+        throw new IllegalArgumentException("Unknown transport " + name + ", expecting cli or rest");
+    }
+
+    private static int intEnv(final String name, final int defaultValue, final int min) {
+
+        final Long value = longEnv(name, min);
+        if (value == null) return defaultValue;
+        if (value > Integer.MAX_VALUE) throw invalidEnv(name, value, min);
+
+        return value.intValue();
+    }
+
+    /**
+     * Numeric environment variable of at least <tt>min</tt>, null when not set.
+     */
+    private static @CheckForNull Long longEnv(final String name, final long min) {
+
+        final String value = System.getenv(name);
+        if (value == null) return null;
+
+        final long number;
+        try {
+            number = Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw invalidEnv(name, value, min);
+        }
+        if (number < min) throw invalidEnv(name, value, min);
+
+        return number;
+    }
+
+    private static IllegalArgumentException invalidEnv(final String name, final Object value, final long min) {
+
+        return new IllegalArgumentException(String.format(
+                "Invalid value of %s environment variable: '%s', expecting a number of at least %d", name, value, min
+        ));
+    }
+
     public Main(CommandResponse response, CLIPool cliPool) {
 
+        this(response, new CLITransport(cliPool));
+    }
+
+    public Main(CommandResponse response, Transport transport) {
+
+        this(response, transport, new Timings());
+    }
+
+    /**
+     * @param timings Timings to record latency of the run to.
+     */
+    public Main(CommandResponse response, Transport transport, Timings timings) {
+
         this.response = response;
-        setupMapping(cliPool);
+        this.timings = timings;
+        setupMapping(transport);
     }
 
-    private void setupMapping(CLIPool cliPool) {
+    private void setupMapping(Transport transport) {
 
-        final ConfigTransfer config = new ConfigTransfer(cliPool);
+        final ConfigTransfer config = new ConfigTransfer(transport, timings, null);
 
         addCommand(usage);
         addCommand(new CloneJob(config));
         addCommand(new CloneView(config));
         addCommand(new CloneNode(config));
-        addCommand(new Recipe(config, cliPool));
+        addCommand(new Migrate(config));
+        addCommand(new Recipe(config, transport));
+        addCommand(new Batch(transport, timings));
+        addCommand(new Daemon(transport));
     }
 
     private void addCommand(final Handler handler) {
@@ -79,11 +192,25 @@ public class Main {
         commandMapping.put(handler.name(), handler);
     }
 
+    /**
+     * Run command.
+     *
+     * Leading <tt>--timings</tt> option prints latency summary of the run to standard error once the command
+     * completes, <tt>--timings=json:FILE</tt> writes it to FILE as JSON.
+     */
     public CommandResponse run(final String... args) {
 
+        String timingsReport = null;
         try {
 
-            getHandler(args).run(response);
+            String[] commandArgs = args;
+            if (isTimingsOption(args)) {
+
+                timingsReport = timingsReport(args[0]);
+                commandArgs = Arrays.copyOfRange(args, 1, args.length);
+            }
+
+            getHandler(commandArgs).run(response);
         } catch (final Exception ex) {
 
             ex.printStackTrace(response.err());
@@ -91,9 +218,68 @@ public class Main {
             response.returnCode(-1);
         }
 
+        if (timingsReport != null) {
+            reportTimings(timingsReport);
+        }
+
         return response;
     }
 
+    /**
+     * Name of the command arguments invoke, null if there is none.
+     */
+    public static @CheckForNull String commandName(final String... args) {
+
+        final int index = isTimingsOption(args) ? 1 : 0;
+        return args.length > index ? args[index] : null;
+    }
+
+    private static boolean isTimingsOption(final String... args) {
+
+        return args.length > 0 && (args[0].equals(TIMINGS_OPTION) || args[0].startsWith(TIMINGS_OPTION + "="));
+    }
+
+    /**
+     * @return <tt>text</tt> or <tt>json:FILE</tt>.
+     */
+    private static String timingsReport(final String option) {
+
+        if (option.equals(TIMINGS_OPTION)) return "text";
+
+        final String value = option.substring(TIMINGS_OPTION.length() + 1);
+        if ("text".equals(value)) return value;
+        if (value.startsWith("json:") && value.length() > "json:".length()) return value;
+
+        throw new IllegalArgumentException(
+                "Invalid value of " + TIMINGS_OPTION + ": " + value + ", expecting text or json:FILE"
+        );
+    }
+
+    private void reportTimings(final String report) {
+
+        if ("text".equals(report)) {
+
+            timings.report(response.err());
+            return;
+        }
+
+        final String file = report.substring("json:".length());
+        try {
+
+            final PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8");
+            try {
+
+                timings.reportJson(out);
+            } finally {
+
+                out.close();
+            }
+        } catch (IOException ex) {
+
+            response.err().println("Unable to write timings to " + file + ": " + ex.getMessage());
+        }
+    }
+
     public Map<String, Handler> commandMapping() {
 
         return Collections.unmodifiableMap(commandMapping);
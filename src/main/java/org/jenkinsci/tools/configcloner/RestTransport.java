@@ -0,0 +1,602 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import hudson.remoting.Base64;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Run commands over Jenkins HTTP API reusing keep-alive connections.
+ *
+ * Configurations of jobs, views and existing nodes are read and written through their <tt>config.xml</tt> URLs, jobs
+ * and views are created posting configuration to <tt>createItem</tt> and <tt>createView</tt>, jobs are listed by
+ * remote API and groovy scripts without arguments are evaluated by <tt>scriptText</tt>. Commands with no HTTP
+ * counterpart, creating nodes and scripts streaming data, are delegated to the fallback transport.
+ *
+ * Every instance serves up to a given number of requests at a time. Connections are kept open by
+ * {@link HttpURLConnection} once responses are read completely. CSRF crumb of every instance is requested once and
+ * requested again when rejected. Requests answered by HTTP 429 or 5xx exit with {@link Transport#OVERLOADED}.
+ */
+public class RestTransport implements Transport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    private static final Pattern COMMAND = Pattern.compile("(get|create|update|delete)-(job|view|node)");
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final Crumb NO_CRUMB = new Crumb(null, null, null);
+
+    private final Transport fallback;
+    private final @CheckForNull String authorization;
+    private final int maxConnections;
+    private final ConcurrentMap<JenkinsInstance, Semaphore> permits = new ConcurrentHashMap<JenkinsInstance, Semaphore>();
+    private final ConcurrentMap<JenkinsInstance, Crumb> crumbs = new ConcurrentHashMap<JenkinsInstance, Crumb>();
+
+    /**
+     * @param fallback Transport to run commands that have no HTTP counterpart.
+     * @param user User to authenticate as. Requests are anonymous unless both user and token are given.
+     * @param token API token of the user.
+     * @param maxConnections Maximal number of requests in flight per instance.
+     */
+    public RestTransport(
+            final Transport fallback,
+            final @CheckForNull String user,
+            final @CheckForNull String token,
+            final int maxConnections
+    ) {
+
+        if (maxConnections < 1) throw new IllegalArgumentException("Invalid number of connections: " + maxConnections);
+
+        this.fallback = fallback;
+        this.maxConnections = maxConnections;
+        this.authorization = user == null || token == null
+                ? null
+                : "Basic " + Base64.encode(bytes(user + ":" + token))
+        ;
+    }
+
+    public int execute(
+            final JenkinsInstance instance,
+            final List<String> command,
+            final InputStream stdin,
+            final OutputStream out,
+            final OutputStream err
+    ) {
+
+        final Request request = request(command);
+        if (request == null) return fallback.execute(instance, command, stdin, out, err);
+
+        final Semaphore permit = permit(instance);
+        try {
+
+            permit.acquire();
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        }
+
+        try {
+
+            return request.perform(instance, stdin, out, err);
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        } finally {
+
+            permit.release();
+        }
+    }
+
+    /**
+     * Request the crumb of every instance verifying it can be reached.
+     */
+    public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {
+
+        WarmUp.connect(instances, timeout, unit, new WarmUp.Connector() {
+            public void connect(final JenkinsInstance instance) throws IOException {
+
+                crumb(instance);
+            }
+        });
+    }
+
+    /**
+     * @return null if the command has no HTTP counterpart.
+     */
+    private @CheckForNull Request request(final List<String> command) {
+
+        if (command.size() == 1 && "list-jobs".equals(command.get(0))) return new ListJobs();
+
+        if (command.size() == 2 && "groovy".equals(command.get(0)) && "=".equals(command.get(1))) return new Script();
+
+        final Matcher matcher = COMMAND.matcher(command.get(0));
+        if (command.size() != 2 || !matcher.matches()) return null;
+
+        final String verb = matcher.group(1);
+        final String kind = matcher.group(2);
+        final String name = command.get(1);
+
+        if ("create".equals(verb)) {
+
+            if ("node".equals(kind)) return null;
+
+            final int slash = name.lastIndexOf('/');
+            final String parent = slash < 0 ? "" : path(kind, name.substring(0, slash));
+            final String action = "job".equals(kind) ? "createItem" : "createView";
+            return new Config("POST", parent + action + "?name=" + encode(name.substring(slash + 1)), kind, name, true);
+        }
+
+        final String path = path(kind, name);
+        if ("get".equals(verb)) return new Config("GET", path + "config.xml", kind, name);
+        if ("update".equals(verb)) return new Config("POST", path + "config.xml", kind, name);
+
+        return new Config("POST", path + "doDelete", kind, name, true);
+    }
+
+    /**
+     * URL of the entity relative to instance root. Jobs in folders and nested views are separated by slash.
+     */
+    private static String path(final String kind, final String name) {
+
+        if ("node".equals(kind)) return "computer/" + encode(name) + "/";
+
+        final StringBuilder path = new StringBuilder();
+        for (final String segment: name.split("/")) {
+            path.append(kind).append('/').append(encode(segment)).append('/');
+        }
+        return path.toString();
+    }
+
+    private Semaphore permit(final JenkinsInstance instance) {
+
+        final Semaphore permit = permits.get(instance);
+        if (permit != null) return permit;
+
+        final Semaphore created = new Semaphore(maxConnections, true);
+        final Semaphore existing = permits.putIfAbsent(instance, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * CSRF protection crumb of the instance, requested on first use.
+     */
+    private Crumb crumb(final JenkinsInstance instance) throws IOException {
+
+        final Crumb cached = crumbs.get(instance);
+        if (cached != null) return cached;
+
+        final HttpURLConnection connection = open(
+                instance, "GET", "crumbIssuer/api/xml?xpath=concat(//crumbRequestField,%22:%22,//crumb)"
+        );
+        try {
+
+            final int code = connection.getResponseCode();
+            final Crumb crumb;
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+
+                crumb = NO_CRUMB;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+
+                final String body = new String(read(connection.getInputStream()), "UTF-8").trim();
+                final int colon = body.indexOf(':');
+                if (colon < 0) throw new IOException("Invalid crumb of " + instance + ": " + body);
+
+                final String cookie = connection.getHeaderField("Set-Cookie");
+                crumb = new Crumb(
+                        body.substring(0, colon),
+                        body.substring(colon + 1),
+                        cookie == null ? null : cookie.split(";", 2)[0]
+                );
+            } else {
+
+                throw new IOException(status(connection) + " requesting crumb of " + instance);
+            }
+
+            crumbs.put(instance, crumb);
+            return crumb;
+        } finally {
+
+            discard(connection);
+        }
+    }
+
+    private HttpURLConnection open(
+            final JenkinsInstance instance,
+            final String method,
+            final String path
+    ) throws IOException {
+
+        String root = instance.url().toString();
+        if (!root.endsWith("/")) {
+            root += "/";
+        }
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(root + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    /**
+     * Command mapped to HTTP request.
+     */
+    private abstract class Request {
+
+        private final String method;
+        private final String path;
+        private final boolean redirects;
+        private final boolean repeatable;
+
+        private Request(final String method, final String path) {
+            this(method, path, false, "GET".equals(method));
+        }
+
+        /**
+         * @param redirects Jenkins answers successful request by redirect.
+         * @param repeatable Sending the request twice has the same effect as sending it once.
+         */
+        private Request(final String method, final String path, final boolean redirects, final boolean repeatable) {
+            this.method = method;
+            this.path = path;
+            this.redirects = redirects;
+            this.repeatable = repeatable;
+        }
+
+        /**
+         * Send the request retrying once when the cached crumb is rejected and once when pooled connection turns out
+         * to be closed. Request the server might have processed is only resent when it is repeatable.
+         */
+        private int perform(
+                final JenkinsInstance instance,
+                final InputStream stdin,
+                final OutputStream out,
+                final OutputStream err
+        ) throws IOException {
+
+            final byte[] body = "POST".equals(method) ? body(read(stdin)) : null;
+
+            boolean reconnected = false;
+            boolean crumbRenewed = false;
+            for (;;) {
+
+                final Crumb crumb = body == null ? NO_CRUMB : crumb(instance);
+                final HttpURLConnection connection = open(instance, method, path);
+                try {
+
+                    try {
+
+                        write(connection, crumb, body);
+                    } catch (SocketException ex) {
+
+                        // Server closed idle keep-alive connection before the request was written
+                        if (reconnected) throw ex;
+                        reconnected = true;
+                        continue;
+                    }
+
+                    final int code;
+                    try {
+
+                        code = connection.getResponseCode();
+                    } catch (SocketException ex) {
+
+                        // Connection closed without response, streamed POST is not retried by HttpURLConnection
+                        if (reconnected || !repeatable) throw ex;
+                        reconnected = true;
+                        continue;
+                    }
+
+                    if (code == HttpURLConnection.HTTP_FORBIDDEN && body != null && !crumbRenewed) {
+
+                        // Crumb might have expired
+                        crumbs.remove(instance, crumb);
+                        crumbRenewed = true;
+                        continue;
+                    }
+
+                    final boolean redirect = code >= 300 && code < 400;
+                    if (code >= 200 && code < 300 || redirect && redirects) {
+                        return respond(read(connection.getInputStream()), out, err);
+                    }
+
+                    if (redirect) {
+
+                        err.write(bytes(status(connection) + " " + method + " " + connection.getURL()
+                                + " redirected to " + connection.getHeaderField("Location") + "\n"
+                        ));
+                        return 1;
+                    }
+
+                    if (code == HttpURLConnection.HTTP_NOT_FOUND) return notFound(err);
+
+                    final String error = connection.getHeaderField("X-Error");
+                    err.write(bytes(status(connection) + " " + method + " " + connection.getURL()
+                            + (error == null ? "" : ": " + error) + "\n"
+                    ));
+                    return code == TOO_MANY_REQUESTS || code >= 500 ? OVERLOADED : 1;
+                } finally {
+
+                    discard(connection);
+                }
+            }
+        }
+
+        private void write(
+                final HttpURLConnection connection,
+                final Crumb crumb,
+                final @CheckForNull byte[] body
+        ) throws IOException {
+
+            if (crumb.field != null) {
+                connection.setRequestProperty(crumb.field, crumb.value);
+            }
+            if (crumb.cookie != null) {
+                connection.setRequestProperty("Cookie", crumb.cookie);
+            }
+
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType());
+                connection.setFixedLengthStreamingMode(body.length);
+                final OutputStream request = connection.getOutputStream();
+                try {
+
+                    request.write(body);
+                } finally {
+
+                    request.close();
+                }
+            }
+        }
+
+        protected byte[] body(final byte[] stdin) throws IOException {
+            return stdin;
+        }
+
+        protected String contentType() {
+            return "application/xml; charset=UTF-8";
+        }
+
+        protected abstract int respond(byte[] body, OutputStream out, OutputStream err) throws IOException;
+
+        protected int notFound(final OutputStream err) throws IOException {
+
+            err.write(bytes("No such page " + path + "\n"));
+            return 3;
+        }
+    }
+
+    /**
+     * Read, write, create or delete configuration of an entity.
+     */
+    private final class Config extends Request {
+
+        private final String kind;
+        private final String name;
+
+        private Config(final String method, final String path, final String kind, final String name) {
+            this(method, path, kind, name, false);
+        }
+
+        /**
+         * @param redirects Request creates or deletes the entity, Jenkins answers by redirect and it is not safe to repeat.
+         */
+
+        private Config(
+                final String method, final String path, final String kind, final String name, final boolean redirects
+        ) {
+            super(method, path, redirects, !redirects);
+            this.kind = kind;
+            this.name = name;
+        }
+
+        @Override
+        protected int respond(final byte[] body, final OutputStream out, final OutputStream err) throws IOException {
+
+            out.write(body);
+            return 0;
+        }
+
+        @Override
+        protected int notFound(final OutputStream err) throws IOException {
+
+            err.write(bytes("No such " + kind + " '" + name + "'\n"));
+            return 3;
+        }
+    }
+
+    /**
+     * Names of top-level jobs, one per line.
+     */
+    private final class ListJobs extends Request {
+
+        private ListJobs() {
+            super("GET", "api/xml?tree=jobs%5Bname%5D");
+        }
+
+        @Override
+        protected int respond(final byte[] body, final OutputStream out, final OutputStream err) throws IOException {
+
+            final NodeList jobs;
+            try {
+
+                jobs = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                        .parse(new ByteArrayInputStream(body))
+                        .getDocumentElement().getElementsByTagName("job")
+                ;
+            } catch (ParserConfigurationException ex) {
+
+                throw new AssertionError(ex);
+            } catch (SAXException ex) {
+
+                throw new IOException("Invalid job list", ex);
+            }
+
+            for (int i = 0; i < jobs.getLength(); i++) {
+
+                final NodeList children = jobs.item(i).getChildNodes();
+                for (int j = 0; j < children.getLength(); j++) {
+
+                    final Node child = children.item(j);
+                    if (child instanceof Element && "name".equals(child.getNodeName())) {
+                        out.write(bytes(child.getTextContent() + "\n"));
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Groovy script read from standard input printing its output.
+     */
+    private final class Script extends Request {
+
+        private Script() {
+            super("POST", "scriptText");
+        }
+
+        @Override
+        protected byte[] body(final byte[] stdin) throws IOException {
+
+            return bytes("script=" + URLEncoder.encode(new String(stdin, "UTF-8"), "UTF-8"));
+        }
+
+        @Override
+        protected String contentType() {
+            return "application/x-www-form-urlencoded";
+        }
+
+        @Override
+        protected int respond(final byte[] body, final OutputStream out, final OutputStream err) throws IOException {
+
+            out.write(body);
+            return 0;
+        }
+    }
+
+    private static final class Crumb {
+
+        private final @CheckForNull String field;
+        private final @CheckForNull String value;
+        private final @CheckForNull String cookie;
+
+        private Crumb(final String field, final String value, final String cookie) {
+            this.field = field;
+            this.value = value;
+            this.cookie = cookie;
+        }
+    }
+
+    private static String status(final HttpURLConnection connection) throws IOException {
+
+        return "HTTP " + connection.getResponseCode() + " " + connection.getResponseMessage();
+    }
+
+    /**
+     * Read the rest of the response and close it so the connection can be reused.
+     */
+    private static void discard(final HttpURLConnection connection) {
+
+        try {
+
+            final InputStream body = connection.getResponseCode() >= 400
+                    ? connection.getErrorStream()
+                    : connection.getInputStream()
+            ;
+            if (body != null) {
+                read(body);
+                body.close();
+            }
+        } catch (IOException ex) {
+
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String encode(final String segment) {
+
+        try {
+
+            return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static byte[] bytes(final String string) {
+
+        try {
+
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Latency of remote operations and transformations collected during the run.
+ *
+ * Every {@link Main} run collects its own timings so runs served by one process do not mix.
+ */
+public final class Timings {
+
+    /**
+     * Timings of the run the thread is working for. Set while the remote command is executed so connections opened on
+     * its behalf are attributed to it.
+     */
+    private static final ThreadLocal<Timings> CURRENT = new ThreadLocal<Timings>();
+
+    /*package*/ static @CheckForNull Timings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attribute operations of current thread to timings.
+     *
+     * @return Timings previously attributed to, to be passed to {@link #restore(Timings)}.
+     */
+    /*package*/ static @CheckForNull Timings enter(final @CheckForNull Timings timings) {
+
+        final Timings previous = CURRENT.get();
+        CURRENT.set(timings);
+        return previous;
+    }
+
+    /*package*/ static void restore(final @CheckForNull Timings previous) {
+
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Samples>> operations =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Samples>>()
+    ;
+
+    /**
+     * Record single operation against the host.
+     */
+    public void record(final String operation, final String host, final long durationNanos) {
+
+        ConcurrentMap<String, Samples> hosts = operations.get(operation);
+        if (hosts == null) {
+
+            final ConcurrentMap<String, Samples> created = new ConcurrentHashMap<String, Samples>();
+            hosts = operations.putIfAbsent(operation, created);
+            if (hosts == null) {
+                hosts = created;
+            }
+        }
+
+        Samples samples = hosts.get(host);
+        if (samples == null) {
+
+            final Samples created = new Samples();
+            samples = hosts.putIfAbsent(host, created);
+            if (samples == null) {
+                samples = created;
+            }
+        }
+
+        samples.add(durationNanos);
+    }
+
+    public boolean isEmpty() {
+
+        return operations.isEmpty();
+    }
+
+    /**
+     * Print summary per operation and host followed by total for the operation.
+     */
+    public void report(final PrintStream out) {
+
+        final String format = "%-16s %-40s %7s %9s %9s %9s %9s%n";
+        out.printf(format, "Operation", "Host", "Count", "p50 [ms]", "p95 [ms]", "p99 [ms]", "max [ms]");
+        for (final Map.Entry<String, Map<String, Summary>> operation: summary().entrySet()) {
+
+            for (final Map.Entry<String, Summary> host: operation.getValue().entrySet()) {
+
+                final Summary s = host.getValue();
+                out.printf(
+                        format, operation.getKey(), host.getKey(), s.count,
+                        millis(s.p50), millis(s.p95), millis(s.p99), millis(s.max)
+                );
+            }
+        }
+    }
+
+    /**
+     * Write summary as JSON object keyed by operation and host.
+     */
+    public void reportJson(final PrintStream out) {
+
+        out.print('{');
+        boolean firstOperation = true;
+        for (final Map.Entry<String, Map<String, Summary>> operation: summary().entrySet()) {
+
+            if (!firstOperation) out.print(',');
+            firstOperation = false;
+
+            out.print(jsonString(operation.getKey()));
+            out.print(":{");
+            boolean firstHost = true;
+            for (final Map.Entry<String, Summary> host: operation.getValue().entrySet()) {
+
+                if (!firstHost) out.print(',');
+                firstHost = false;
+
+                final Summary s = host.getValue();
+                out.print(jsonString(host.getKey()));
+                out.printf(
+                        ":{\"count\":%d,\"p50\":%s,\"p95\":%s,\"p99\":%s,\"max\":%s}",
+                        s.count, millis(s.p50), millis(s.p95), millis(s.p99), millis(s.max)
+                );
+            }
+            out.print('}');
+        }
+        out.println('}');
+    }
+
+    /**
+     * Summary by operation and host. Host <tt>*</tt> holds the total for operation.
+     */
+    private Map<String, Map<String, Summary>> summary() {
+
+        final Map<String, Map<String, Summary>> summary = new TreeMap<String, Map<String, Summary>>();
+        for (final Map.Entry<String, ConcurrentMap<String, Samples>> operation: operations.entrySet()) {
+
+            final Map<String, Summary> hosts = new TreeMap<String, Summary>();
+            final List<long[]> all = new ArrayList<long[]>();
+            for (final Map.Entry<String, Samples> host: operation.getValue().entrySet()) {
+
+                final long[] values = host.getValue().values();
+                all.add(values);
+                hosts.put(host.getKey(), new Summary(values));
+            }
+
+            if (hosts.size() > 1) {
+                hosts.put("*", new Summary(concat(all)));
+            }
+
+            summary.put(operation.getKey(), hosts);
+        }
+
+        return summary;
+    }
+
+    private static long[] concat(final List<long[]> arrays) {
+
+        int length = 0;
+        for (final long[] array: arrays) {
+            length += array.length;
+        }
+
+        final long[] result = new long[length];
+        int offset = 0;
+        for (final long[] array: arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+
+        return result;
+    }
+
+    private static String millis(final long nanos) {
+
+        return String.format(Locale.ENGLISH, "%.1f", nanos / 1000000D);
+    }
+
+    private static String jsonString(final String value) {
+
+        final StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (final char c: value.toCharArray()) {
+
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+
+    private static final class Samples {
+
+        private long[] values = new long[16];
+        private int size = 0;
+
+        private synchronized void add(final long value) {
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        private synchronized long[] values() {
+
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Nearest-rank percentiles of recorded durations.
+     */
+    /*package*/ static final class Summary {
+
+        /*package*/ final int count;
+        /*package*/ final long p50;
+        /*package*/ final long p95;
+        /*package*/ final long p99;
+        /*package*/ final long max;
+
+        /*package*/ Summary(final long[] values) {
+
+            Arrays.sort(values);
+            this.count = values.length;
+            this.p50 = percentile(values, 50);
+            this.p95 = percentile(values, 95);
+            this.p99 = percentile(values, 99);
+            this.max = values.length == 0 ? 0 : values[values.length - 1];
+        }
+
+        private static long percentile(final long[] sorted, final int percentile) {
+
+            if (sorted.length == 0) return 0;
+
+            final int rank = (int) Math.ceil(percentile / 100D * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
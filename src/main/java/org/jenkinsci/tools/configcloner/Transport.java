@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Way to run commands on Jenkins instances.
+ *
+ * Commands are named and take arguments the way Jenkins CLI commands do so implementations can be swapped without
+ * handlers noticing.
+ * @see CLITransport
+ * @see RestTransport
+ */
+public interface Transport {
+
+    /**
+     * Exit code of command the instance failed to serve because it is overloaded or erring, like HTTP 429 or 5xx.
+     * Load is reduced in response.
+     *
+     * @see AdaptiveLimiter
+     */
+    int OVERLOADED = 75;
+
+    /**
+     * Run command on the instance.
+     *
+     * @return Exit code of the command, 0 on success.
+     */
+    int execute(JenkinsInstance instance, List<String> command, InputStream stdin, OutputStream out, OutputStream err);
+
+    /**
+     * Connect to all instances before they are used so unreachable ones are reported before any modification.
+     *
+     * @throws HandlerException in case some of the instances can not be connected in time.
+     */
+    void warmUp(Collection<JenkinsInstance> instances, long timeout, TimeUnit unit);
+}
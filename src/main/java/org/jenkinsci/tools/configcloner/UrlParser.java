@@ -71,24 +71,32 @@ public abstract class UrlParser {
         final List<ConfigDestination> urls = new ArrayList<ConfigDestination>(urlCandidates.size());
         for (final String url: urlCandidates) {
 
-            final ConfigDestination dest = _parseDest(base, url);
-
-            if (dest.equals(base)) {
-                if (overwriteExisting) { // This functionality might be useful for updating config using sed updates
-                    System.err.println("Source and destination represent the same entity: " + url);
-                } else {
-                    throw new IllegalArgumentException(
-                            "Source and destination represent the same entity: " + url + ". Use --force to override."
-                    );
-                }
-            }
-
-            urls.add(dest);
+            urls.add(pair(base, url));
         }
 
         return urls;
     }
 
+    /**
+     * Infer entity using base and url
+     */
+    public ConfigDestination pair(final ConfigDestination base, final String url) {
+
+        final ConfigDestination dest = _parseDest(base, url);
+
+        if (dest.equals(base)) {
+            if (overwriteExisting) { // This functionality might be useful for updating config using sed updates
+                System.err.println("Source and destination represent the same entity: " + url);
+            } else {
+                throw new IllegalArgumentException(
+                        "Source and destination represent the same entity: " + url + ". Use --force to override."
+                );
+            }
+        }
+
+        return dest;
+    }
+
     private ConfigDestination _parseDest(
             final ConfigDestination base, final String urlCandidate
     ) {
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect to many instances concurrently reporting all that failed at once.
+ */
+/*package*/ final class WarmUp {
+
+    /*package*/ interface Connector {
+        void connect(JenkinsInstance instance) throws Exception;
+    }
+
+    private WarmUp() {}
+
+    /**
+     * @throws HandlerException in case some of the instances can not be connected in time.
+     */
+    /*package*/ static void connect(
+            final Collection<JenkinsInstance> instances,
+            final long timeout,
+            final TimeUnit unit,
+            final Connector connector
+    ) {
+
+        final Set<JenkinsInstance> distinct = new LinkedHashSet<JenkinsInstance>(instances);
+        if (distinct.isEmpty()) return;
+
+        final Timings timings = Timings.current();
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(distinct.size());
+        for (final JenkinsInstance instance: distinct) {
+
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+
+                    Timings.enter(timings);
+                    instance.address(); // Fail fast for unknown hosts
+                    connector.connect(instance);
+                    return null;
+                }
+            });
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(distinct.size());
+        try {
+
+            final List<Future<Void>> results = executor.invokeAll(tasks, timeout, unit);
+
+            final StringBuilder failures = new StringBuilder();
+            int i = 0;
+            for (final JenkinsInstance instance: distinct) {
+
+                try {
+
+                    results.get(i++).get();
+                } catch (CancellationException ex) {
+
+                    failures.append(String.format("%n%s: not connected in %d %s", instance, timeout, unit));
+                } catch (ExecutionException ex) {
+
+                    failures.append(String.format("%n%s: %s", instance, ex.getCause()));
+                }
+            }
+
+            if (failures.length() > 0) throw new HandlerException(
+                    new IOException("Unable to connect to Jenkins:" + failures)
+            );
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.HandlerException;
+import org.jenkinsci.tools.configcloner.Main;
+import org.jenkinsci.tools.configcloner.Timings;
+import org.jenkinsci.tools.configcloner.Transport;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Run commands read from file, one per line, sharing the connection pool.
+ *
+ * Lines are split into arguments the way shell does for simple commands: by whitespace, with single quotes,
+ * double quotes and backslash escaping. Empty lines and lines starting with <tt>#</tt> are skipped.
+ */
+public class Batch implements Handler {
+
+    @Argument(metaVar = "FILE", usage = "File to read commands from. Standard input is read by default or for -")
+    private String file = "-";
+
+    @Option(name = "--parallel", metaVar = "N", usage = "Run up to N commands concurrently")
+    private int parallel = 1;
+
+    @Option(name = "--fail-fast", usage = "Do not start more commands once one fails")
+    private boolean failFast = false;
+
+    private final Transport transport;
+    private final Timings timings;
+
+    /**
+     * @param timings Timings of the run commands are part of.
+     */
+    public Batch(final Transport transport, final Timings timings) {
+        this.transport = transport;
+        this.timings = timings;
+    }
+
+    public String name() {
+        return "batch";
+    }
+
+    public String description() {
+        return "Run commands from <FILE> line by line";
+    }
+
+    public CommandResponse run(final CommandResponse response) {
+
+        if (parallel < 1) throw new IllegalArgumentException("Invalid number of threads: " + parallel);
+
+        final String source = "-".equals(file) ? "<stdin>" : file;
+        final BufferedReader reader = open();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        int total = 0;
+        int failed = 0;
+        try {
+
+            // Do not run ahead when failure stops the batch
+            final int window = failFast ? parallel : 2 * parallel;
+            final Deque<Future<Status>> pending = new ArrayDeque<Future<Status>>();
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+
+                final String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                if (pending.size() >= window) {
+                    if (!report(response, source, pending.removeFirst().get())) failed++;
+                }
+
+                if (failFast && failed > 0) break;
+
+                total++;
+                pending.add(executor.submit(new Command(number, trimmed)));
+            }
+
+            for (final Future<Status> status: pending) {
+                if (!report(response, source, status.get())) failed++;
+            }
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } catch (ExecutionException ex) {
+
+            throw new HandlerException(ex);
+        } finally {
+
+            executor.shutdownNow();
+            if (!"-".equals(file)) {
+                close(reader);
+            }
+        }
+
+        response.out().printf("%d of %d commands succeeded%n", total - failed, total);
+        return response.returnCode(failed == 0 ? 0 : -1);
+    }
+
+    private BufferedReader open() {
+
+        try {
+
+            final InputStream in = "-".equals(file) ? System.in : new FileInputStream(file);
+            return new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        }
+    }
+
+    private static void close(final BufferedReader reader) {
+
+        try {
+
+            reader.close();
+        } catch (IOException ex) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Print command output followed by its status line.
+     *
+     * @return true if the command succeeded.
+     */
+    private static boolean report(final CommandResponse response, final String source, final Status status) {
+
+        try {
+
+            response.merge(status.response);
+        } finally {
+
+            status.response.close();
+        }
+
+        final int ret = status.response.returnCode();
+        if (ret == 0) {
+            response.out().printf("[OK] %s:%d %s%n", source, status.number, status.line);
+        } else {
+            response.err().printf("[FAILED %d] %s:%d %s%n", ret, source, status.number, status.line);
+        }
+
+        return ret == 0;
+    }
+
+    private static final class Status {
+
+        private final int number;
+        private final String line;
+        private final CommandResponse.Accumulator response;
+
+        private Status(final int number, final String line, final CommandResponse.Accumulator response) {
+            this.number = number;
+            this.line = line;
+            this.response = response;
+        }
+    }
+
+    private final class Command implements Callable<Status> {
+
+        private final int number;
+        private final String line;
+
+        private Command(final int number, final String line) {
+            this.number = number;
+            this.line = line;
+        }
+
+        public Status call() {
+
+            final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+            try {
+
+                final List<String> args = tokenize(line);
+                final String[] commandArgs = args.toArray(new String[args.size()]);
+                final String command = Main.commandName(commandArgs);
+                if (name().equals(command) || "daemon".equals(command)) throw new IllegalArgumentException(
+                        "Command " + command + " can not be run in batch"
+                );
+
+                // Handlers keep parsed options so every command needs its own
+                new Main(rsp, transport, timings).run(commandArgs);
+            } catch (IllegalArgumentException ex) {
+
+                rsp.err().println(ex.getMessage());
+                rsp.returnCode(-1);
+            }
+            return new Status(number, line, rsp);
+        }
+    }
+
+    /**
+     * Split line into arguments.
+     *
+     * @throws IllegalArgumentException When quote is not terminated.
+     */
+    /*package*/ static List<String> tokenize(final String line) {
+
+        final List<String> args = new ArrayList<String>();
+        final StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+
+            final char c = line.charAt(i);
+
+            if (quote == '\'') {
+
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length() && (quote == 0 || "\"\\$`".indexOf(line.charAt(i + 1)) != -1)) {
+
+                arg.append(line.charAt(++i));
+                inArg = true;
+            } else if (quote == '"') {
+
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+
+                arg.append(c);
+                inArg = true;
+            }
+        }
+
+        if (quote != 0) throw new IllegalArgumentException("Unterminated quote in: " + line);
+
+        if (inArg) {
+            args.add(arg.toString());
+        }
+
+        return args;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.ConfigTransfer;
+
+/**
+ * Entities of one instance expected to be fetched, retrieved in chunks using {@link ConfigTransfer#fetchAll}.
+ *
+ * Entity requested for the first time causes a chunk of entities starting with the first one not fetched yet to be
+ * fetched at once. Entities requested out of order far behind, those not planned and all entities once bulk fetch
+ * fails are left for the caller to fetch one by one.
+ */
+/*package*/ final class BulkFetch {
+
+    /*package*/ static final int CHUNK = 500;
+
+    private final ConfigTransfer config;
+    private final ConfigDestination instance;
+    private final String lookup;
+    private final List<String> names;
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+    private final Map<String, CommandResponse.Accumulator> fetched = new HashMap<String, CommandResponse.Accumulator>();
+    private final PrintStream log;
+
+    /**
+     * Index of the first entity not fetched yet.
+     */
+    private int next = 0;
+    private boolean failed = false;
+
+    /*package*/ BulkFetch(
+            final ConfigTransfer config,
+            final ConfigDestination instance,
+            final String lookup,
+            final List<String> names,
+            final PrintStream log
+    ) {
+        this.config = config;
+        this.instance = instance;
+        this.lookup = lookup;
+        this.names = names;
+        this.log = log;
+
+        for (int i = 0; i < names.size(); i++) {
+            index.put(names.get(i), i);
+        }
+    }
+
+    /**
+     * @return null if the entity should be fetched separately.
+     */
+    /*package*/ synchronized @CheckForNull CommandResponse.Accumulator take(final ConfigDestination entity) {
+
+        if (!instance.instance().equals(entity.instance())) return null;
+
+        final CommandResponse.Accumulator ready = fetched.remove(entity.entity());
+        if (ready != null || failed) return ready;
+
+        final Integer position = index.get(entity.entity());
+        if (position == null || position < next) return null;
+
+        // Include entities skipped so far when they fit in the chunk
+        final int start = position - next < CHUNK ? next : position;
+        final int end = Math.min(start + CHUNK, names.size());
+        final Map<String, CommandResponse.Accumulator> chunk = config.fetchAll(
+                instance.instance(), lookup, names.subList(start, end)
+        );
+
+        if (chunk == null) {
+            log.println("Unable to fetch configurations in bulk from " + instance.instance() + ", fetching one by one");
+            failed = true;
+            return null;
+        }
+
+        next = end;
+        fetched.putAll(chunk);
+        return fetched.remove(entity.entity());
+    }
+
+    /**
+     * Discard configurations fetched but not taken.
+     */
+    /*package*/ synchronized void close() {
+
+        for (final CommandResponse.Accumulator rsp: fetched.values()) {
+            rsp.close();
+        }
+        fetched.clear();
+        failed = true;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
+
+/**
+ * Configurations to be sent to many destinations, written in chunks using {@link ConfigTransfer#sendAll}.
+ *
+ * Deliveries are grouped by destination instance and every chunk is written by one groovy command. Instances that
+ * can not run the script are reported once and all deliveries to them are sent one by one.
+ */
+/*package*/ final class BulkSend {
+
+    /*package*/ static final int CHUNK = 500;
+    /*package*/ static final int CHUNK_BYTES = 8 * 1024 * 1024;
+
+    private final TransferHandler handler;
+    private final ConfigTransfer config;
+    private final String statements;
+    private final PrintStream log;
+    private final Set<JenkinsInstance> refused = Collections.newSetFromMap(
+            new ConcurrentHashMap<JenkinsInstance, Boolean>()
+    );
+
+    /*package*/ BulkSend(
+            final TransferHandler handler,
+            final ConfigTransfer config,
+            final String statements,
+            final PrintStream log
+    ) {
+        this.handler = handler;
+        this.config = config;
+        this.statements = statements;
+        this.log = log;
+    }
+
+    /**
+     * Transformed configuration to be sent to destination, outcome written to the response.
+     */
+    /*package*/ static final class Delivery {
+
+        private final ConfigDestination destination;
+        private final String xml;
+        private final CommandResponse response;
+
+        /*package*/ Delivery(final ConfigDestination destination, final String xml, final CommandResponse response) {
+            this.destination = destination;
+            this.xml = xml;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Send all deliveries writing the outcome to their responses in the order given.
+     */
+    /*package*/ void send(final List<Delivery> deliveries) {
+
+        final Map<JenkinsInstance, List<Delivery>> instances = new LinkedHashMap<JenkinsInstance, List<Delivery>>();
+        for (final Delivery delivery: deliveries) {
+
+            List<Delivery> group = instances.get(delivery.destination.instance());
+            if (group == null) {
+                group = new ArrayList<Delivery>();
+                instances.put(delivery.destination.instance(), group);
+            }
+            group.add(delivery);
+        }
+
+        final Map<Delivery, CommandResponse.Accumulator> sent = new IdentityHashMap<Delivery, CommandResponse.Accumulator>();
+        try {
+
+            for (final Map.Entry<JenkinsInstance, List<Delivery>> group: instances.entrySet()) {
+                send(group.getKey(), group.getValue(), sent);
+            }
+
+            for (final Delivery delivery: deliveries) {
+
+                delivery.response.out().println("Sending " + delivery.destination);
+                final CommandResponse.Accumulator rsp = sent.remove(delivery);
+                if (rsp == null) {
+                    handler.send(delivery.destination, delivery.response, delivery.xml);
+                } else {
+                    delivery.response.merge(rsp);
+                    rsp.close();
+                }
+            }
+        } finally {
+
+            for (final CommandResponse.Accumulator rsp: sent.values()) {
+                rsp.close();
+            }
+        }
+    }
+
+    /**
+     * Send deliveries to one instance in chunks of at most {@link #CHUNK} entities and roughly {@link #CHUNK_BYTES}.
+     */
+    private void send(
+            final JenkinsInstance instance,
+            final List<Delivery> deliveries,
+            final Map<Delivery, CommandResponse.Accumulator> sent
+    ) {
+
+        final Map<String, Delivery> chunk = new LinkedHashMap<String, Delivery>();
+        final Map<String, String> configs = new LinkedHashMap<String, String>();
+        long bytes = 0;
+        for (final Delivery delivery: deliveries) {
+
+            final String entity = delivery.destination.entity();
+            if (chunk.size() >= CHUNK || bytes >= CHUNK_BYTES || chunk.containsKey(entity)) {
+
+                send(instance, chunk, configs, sent);
+                chunk.clear();
+                configs.clear();
+                bytes = 0;
+            }
+
+            final String xml = handler.fixupConfig(delivery.xml, delivery.destination);
+            chunk.put(entity, delivery);
+            configs.put(entity, xml);
+            bytes += xml.length();
+        }
+
+        if (!chunk.isEmpty()) {
+            send(instance, chunk, configs, sent);
+        }
+    }
+
+    private void send(
+            final JenkinsInstance instance,
+            final Map<String, Delivery> chunk,
+            final Map<String, String> configs,
+            final Map<Delivery, CommandResponse.Accumulator> sent
+    ) {
+
+        if (refused.contains(instance)) return;
+
+        final Map<String, CommandResponse.Accumulator> written;
+        final long start = System.nanoTime();
+        try {
+
+            written = config.sendAll(instance, statements, handler.force, configs);
+        } finally {
+
+            config.timings().record("send", instance.toString(), System.nanoTime() - start);
+        }
+
+        if (written == null) {
+
+            if (refused.add(instance)) {
+                log.println("Unable to send configurations in bulk to " + instance + ", sending one by one");
+            }
+            return;
+        }
+
+        for (final Map.Entry<String, Delivery> delivery: chunk.entrySet()) {
+            sent.put(delivery.getValue(), written.get(delivery.getKey()));
+        }
+    }
+}
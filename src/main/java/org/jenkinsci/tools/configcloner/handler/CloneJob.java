@@ -23,6 +23,7 @@
  */
 package org.jenkinsci.tools.configcloner.handler;
 
+import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
 import org.jenkinsci.tools.configcloner.UrlParser;
@@ -33,6 +34,29 @@ import java.util.regex.Pattern;
 
 public class CloneJob extends TransferHandler {
 
+    private static final Pattern URL_PATTERN = Pattern.compile("^(.*?/)(?:view/[^/]+/)*job/([^/]+).*");
+
+    private static final String FETCH_LOOKUP = "def item = jenkins.model.Jenkins.instance.getItemByFullName(name)\n"
+            + "if (item == null) throw new IllegalArgumentException(\"No such job '\" + name + \"'\")\n"
+            + "item.writeConfigDotXml(out)\n"
+    ;
+
+    /**
+     * Jobs in folders are created in the folder named by the leading part of the name.
+     */
+    private static final String SEND_STATEMENTS = "def instance = jenkins.model.Jenkins.instance\n"
+            + "def item = instance.getItemByFullName(name)\n"
+            + "if (item != null) {\n"
+            + "  if (!force) throw new IllegalArgumentException(\"Job '\" + name + \"' already exists\")\n"
+            + "  item.updateByXml(new javax.xml.transform.stream.StreamSource(xml))\n"
+            + "  return\n"
+            + "}\n"
+            + "def slash = name.lastIndexOf('/')\n"
+            + "def parent = slash < 0 ? instance : instance.getItemByFullName(name.substring(0, slash))\n"
+            + "if (parent == null) throw new IllegalArgumentException(\"No such folder '\" + name.substring(0, slash) + \"'\")\n"
+            + "parent.createProjectFromXML(name.substring(slash + 1), xml)\n"
+    ;
+
     public CloneJob(final ConfigTransfer config) {
 
         super(config);
@@ -58,16 +82,28 @@ public class CloneJob extends TransferHandler {
         return "delete-job";
     }
 
+    @Override
+    protected CommandResponse.Accumulator listEntities(final ConfigDestination instance) {
+        return config.execute(instance, "", "list-jobs");
+    }
+
+    @Override
+    protected String fetchLookup() {
+        return FETCH_LOOKUP;
+    }
+
+    @Override
+    protected String sendStatements() {
+        return SEND_STATEMENTS;
+    }
+
     @Override
     protected UrlParser urlParser() {
         return new UrlParser(force) {
             @Override
             protected ConfigDestination parseDestination(final URL url) {
 
-                final Matcher urlMatcher = Pattern
-                        .compile("^(.*?/)(?:view/[^/]+/)*job/([^/]+).*")
-                        .matcher(url.toString())
-                ;
+                final Matcher urlMatcher = URL_PATTERN.matcher(url.toString());
 
                 if (!urlMatcher.matches()) return new ConfigDestination(url, "");
 
@@ -27,12 +27,38 @@ import java.net.URL;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
 import org.jenkinsci.tools.configcloner.UrlParser;
+import org.jenkinsci.tools.configcloner.transform.StreamingRewrite;
 
 public class CloneNode extends TransferHandler {
 
+    private static final Pattern URL_PATTERN = Pattern.compile("^(.*?/)computer/([^/]+).*");
+
+    /**
+     * There is no CLI command to list nodes so use groovy.
+     */
+    private static final String LIST_SCRIPT = "jenkins.model.Jenkins.instance.nodes.each { println it.nodeName }\n";
+
+    private static final String FETCH_LOOKUP = "def node = jenkins.model.Jenkins.instance.getNode(name)\n"
+            + "if (node == null) throw new IllegalArgumentException(\"No such node '\" + name + \"'\")\n"
+            + "jenkins.model.Jenkins.XSTREAM2.toXMLUTF8(node, out)\n"
+    ;
+
+    /**
+     * Adding node keeps existing node of the same name so it is removed first.
+     */
+    private static final String SEND_STATEMENTS = "def instance = jenkins.model.Jenkins.instance\n"
+            + "def existing = instance.getNode(name)\n"
+            + "if (!force && existing != null) throw new IllegalArgumentException(\"Node '\" + name + \"' already exists\")\n"
+            + "def node = jenkins.model.Jenkins.XSTREAM2.fromXML(xml)\n"
+            + "if (node.nodeName != name) throw new IllegalArgumentException(\"Node name '\" + node.nodeName + \"' does not match '\" + name + \"'\")\n"
+            + "if (existing != null) instance.removeNode(existing)\n"
+            + "instance.addNode(node)\n"
+    ;
+
     public CloneNode(final ConfigTransfer config) {
 
         super(config);
@@ -69,16 +95,33 @@ public class CloneNode extends TransferHandler {
         );
     }
 
+    @Override
+    protected StreamingRewrite streamingFixup(ConfigDestination destination) {
+        return new StreamingRewrite().replaceText("/*/name", destination.entity());
+    }
+
+    @Override
+    protected CommandResponse.Accumulator listEntities(final ConfigDestination instance) {
+        return config.execute(instance, LIST_SCRIPT, "groovy", "=");
+    }
+
+    @Override
+    protected String fetchLookup() {
+        return FETCH_LOOKUP;
+    }
+
+    @Override
+    protected String sendStatements() {
+        return SEND_STATEMENTS;
+    }
+
     @Override
     protected UrlParser urlParser() {
         return new UrlParser() {
             @Override
             protected ConfigDestination parseDestination(final URL url) {
 
-                final Matcher urlMatcher = Pattern
-                        .compile("^(.*?/)computer/([^/]+).*")
-                        .matcher(url.toString())
-                ;
+                final Matcher urlMatcher = URL_PATTERN.matcher(url.toString());
 
                 if (!urlMatcher.matches()) return new ConfigDestination(url, "");
 
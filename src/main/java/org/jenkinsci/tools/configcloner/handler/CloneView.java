@@ -24,17 +24,69 @@
 package org.jenkinsci.tools.configcloner.handler;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
 import org.jenkinsci.tools.configcloner.UrlParser;
 import org.kohsuke.args4j.Option;
 
 public class CloneView extends TransferHandler {
 
-    @Option(name = "-r", aliases = { "--recursive" }, usage = "Transfer contained job and views.")
+    private static final Pattern URL_PATTERN = Pattern.compile("^(.*?/)view/([^/]+(?:/view/[^/]+)*).*");
+
+    /**
+     * There is no CLI command to list views so use groovy.
+     * Primary view exists on every instance so it is never transferred.
+     */
+    private static final String LIST_SCRIPT = "def instance = jenkins.model.Jenkins.instance\n"
+            + "instance.views.findAll { it != instance.primaryView }.each { println it.viewName }\n"
+    ;
+
+    /**
+     * Nested views are separated by slash.
+     */
+    private static final String FETCH_LOOKUP = "def view = null\n"
+            + "def group = jenkins.model.Jenkins.instance\n"
+            + "for (String part: name.split('/')) {\n"
+            + "  view = group?.getView(part)\n"
+            + "  group = view instanceof hudson.model.ViewGroup ? view : null\n"
+            + "}\n"
+            + "if (view == null) throw new IllegalArgumentException(\"No such view '\" + name + \"'\")\n"
+            + "view.writeXml(out)\n"
+    ;
+
+    private static final String SEND_STATEMENTS = "def group = jenkins.model.Jenkins.instance\n"
+            + "def parts = name.split('/')\n"
+            + "for (String part: parts.take(parts.length - 1)) {\n"
+            + "  def view = group?.getView(part)\n"
+            + "  group = view instanceof hudson.model.ViewGroup ? view : null\n"
+            + "}\n"
+            + "if (group == null) throw new IllegalArgumentException(\"No such view group '\" + name.substring(0, name.lastIndexOf('/')) + \"'\")\n"
+            + "def leaf = parts[-1]\n"
+            + "def view = group.getView(leaf)\n"
+            + "if (view != null) {\n"
+            + "  if (!force) throw new IllegalArgumentException(\"View '\" + name + \"' already exists\")\n"
+            + "  view.updateByXml(new javax.xml.transform.stream.StreamSource(xml))\n"
+            + "  return\n"
+            + "}\n"
+            + "group.addView(hudson.model.View.createViewFromXML(leaf, xml))\n"
+    ;
+
+    @Option(name = "-r", aliases = { "--recursive" }, usage = "Transfer contained jobs and views.")
     private boolean recursive = false;
 
     public CloneView(final ConfigTransfer config) {
@@ -62,16 +114,204 @@ public class CloneView extends TransferHandler {
         return "delete-view";
     }
 
+    @Override
+    protected CommandResponse.Accumulator listEntities(final ConfigDestination instance) {
+        return config.execute(instance, LIST_SCRIPT, "groovy", "=");
+    }
+
+    @Override
+    protected String fetchLookup() {
+        return FETCH_LOOKUP;
+    }
+
+    @Override
+    protected String sendStatements() {
+        return SEND_STATEMENTS;
+    }
+
+    /**
+     * Transfer jobs of the view and all nested views to every destination instance before the view is sent.
+     *
+     * Nested views are part of the view configuration so they are transferred along with it. Views are walked
+     * concurrently using up to {@link #parallel} threads and every job is fetched once no matter how many views
+     * refer to it. Destinations are read up front in this mode.
+     */
+    @Override
+    protected Iterator<ConfigDestination> transferContained(
+            final ConfigDestination source,
+            final CommandResponse.Accumulator xml,
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response
+    ) {
+
+        if (!recursive) return destinations;
+
+        final List<ConfigDestination> all = new ArrayList<ConfigDestination>();
+        final Set<JenkinsInstance> instances = new LinkedHashSet<JenkinsInstance>();
+        while (destinations.hasNext()) {
+
+            final ConfigDestination dest = destinations.next();
+            all.add(dest);
+            // Jobs are already there
+            if (!dest.instance().equals(source.instance())) {
+                instances.add(dest.instance());
+            }
+        }
+
+        if (!instances.isEmpty()) {
+            new Contained(source, instances).transfer(ViewTree.parse(xml.stdout()), response);
+        }
+
+        return all.iterator();
+    }
+
+    /**
+     * Jobs of a view tree being transferred to destination instances.
+     */
+    private final class Contained {
+
+        private final ConfigDestination source;
+        private final Set<JenkinsInstance> instances;
+        private final CloneJob jobs = new CloneJob(config);
+        private final Set<String> claimed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private List<String> existing = Collections.emptyList();
+
+        private Contained(final ConfigDestination source, final Set<JenkinsInstance> instances) {
+
+            this.source = source;
+            this.instances = instances;
+            jobs.force = force;
+            jobs.dryRun = dryRun;
+            jobs.bulkThreshold = bulkThreshold;
+        }
+
+        private void transfer(final ViewTree view, final CommandResponse response) {
+
+            if (view.usesRegex()) {
+
+                response.out().println("Listing jobs on " + source.instance());
+                existing = jobs.listNames(source, response);
+                if (existing == null) return;
+            }
+
+            jobs.planFetch(source, new ArrayList<String>(view.allJobs(existing)), response);
+            final ForkJoinPool pool = new ForkJoinPool(parallel);
+            try {
+
+                final CommandResponse.Accumulator rsp = pool.invoke(new ViewTask(view));
+                try {
+
+                    response.merge(rsp);
+                } finally {
+
+                    rsp.close();
+                }
+            } finally {
+
+                pool.shutdownNow();
+                jobs.endFetch();
+            }
+        }
+
+        /**
+         * Transfer jobs of a view and fork for nested views. Output is merged in the order of the view tree.
+         */
+        private final class ViewTask extends RecursiveTask<CommandResponse.Accumulator> {
+
+            private final ViewTree view;
+
+            private ViewTask(final ViewTree view) {
+                this.view = view;
+            }
+
+            @Override
+            protected CommandResponse.Accumulator compute() {
+
+                final List<ForkJoinTask<CommandResponse.Accumulator>> tasks = new ArrayList<ForkJoinTask<CommandResponse.Accumulator>>();
+                for (final String job: view.jobs(existing)) {
+                    // Other view has already taken care of it
+                    if (claimed.add(job)) {
+                        tasks.add(new JobTask(job));
+                    }
+                }
+                for (final ViewTree nested: view.views()) {
+                    tasks.add(new ViewTask(nested));
+                }
+
+                invokeAll(tasks);
+
+                final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+                for (final ForkJoinTask<CommandResponse.Accumulator> task: tasks) {
+
+                    final CommandResponse.Accumulator taskRsp = task.join();
+                    try {
+
+                        rsp.merge(taskRsp);
+                    } finally {
+
+                        taskRsp.close();
+                    }
+                }
+                return rsp;
+            }
+        }
+
+        private final class JobTask extends RecursiveTask<CommandResponse.Accumulator> {
+
+            private final String name;
+
+            private JobTask(final String name) {
+                this.name = name;
+            }
+
+            @Override
+            protected CommandResponse.Accumulator compute() {
+
+                final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+                try {
+
+                    transfer(source.newEntity(name), rsp);
+                } catch (RuntimeException ex) {
+
+                    ex.printStackTrace(rsp.err());
+                    rsp.returnCode(-1);
+                }
+                return rsp;
+            }
+
+            private void transfer(final ConfigDestination job, final CommandResponse rsp) {
+
+                rsp.out().println("Fetching " + job);
+                final CommandResponse.Accumulator xml = jobs.fetch(job);
+                try {
+
+                    if (!xml.succeeded()) {
+                        rsp.merge(xml);
+                        return;
+                    }
+
+                    final String config = xml.stdout();
+                    for (final JenkinsInstance instance: instances) {
+
+                        final ConfigDestination dest = new ConfigDestination(instance, name);
+                        rsp.out().println("Sending " + dest);
+                        jobs.send(dest, rsp, config);
+                    }
+                } finally {
+
+                    xml.close();
+                }
+            }
+        }
+    }
+
     @Override
     protected UrlParser urlParser() {
         return new UrlParser() {
             @Override
             protected ConfigDestination parseDestination(final URL url) {
 
-                final Matcher urlMatcher = Pattern
-                        .compile("^(.*?/)view/([^/]+(?:/view/[^/]+)*).*")
-                        .matcher(url.toString())
-                ;
+                final Matcher urlMatcher = URL_PATTERN.matcher(url.toString());
 
                 if (!urlMatcher.matches()) return new ConfigDestination(url, "");
 
@@ -0,0 +1,553 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.HandlerException;
+import org.jenkinsci.tools.configcloner.Main;
+import org.jenkinsci.tools.configcloner.Transport;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Run commands on behalf of clients keeping JVM and connection pool warm between invocations.
+ *
+ * Daemon listens on loopback and writes its port and a random token followed by its working directory line to the
+ * state file readable by owner only. Client sends the token line, its working directory line, the number of arguments
+ * line and NUL terminated arguments. Daemon streams back lines prefixed by <tt>out </tt> or <tt>err </tt> and finally
+ * <tt>exit CODE</tt>.
+ *
+ * Standard input of the client is not forwarded and relative paths are resolved against the working directory of the
+ * daemon so commands reading <tt>-</tt> and commands of clients in other directories are rejected.
+ */
+public class Daemon implements Handler {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAX_ARGS = 10000;
+    private static final int MAX_ARG_LENGTH = 1024 * 1024;
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    @Option(name = "--state", metaVar = "FILE", usage = "Daemon port and token, defaults to $CLONER_DAEMON_STATE or ~/.config-cloner/daemon")
+    private File state = defaultState();
+
+    @Option(name = "--port", metaVar = "PORT", usage = "Listen on loopback PORT, random by default")
+    private int port = 0;
+
+    @Option(name = "--idle-timeout", metaVar = "SECONDS", usage = "Stop after SECONDS without requests, never by default")
+    private int idleTimeout = 0;
+
+    @Option(name = "--stop", usage = "Stop running daemon")
+    private boolean stop = false;
+
+    private final Transport transport;
+
+    private final String workingDirectory = workingDirectory();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean stopping = false;
+    private volatile ServerSocket server;
+
+    public Daemon(final Transport transport) {
+        this.transport = transport;
+    }
+
+    public String name() {
+        return "daemon";
+    }
+
+    public String description() {
+        return "Serve commands of clone.sh keeping connections open";
+    }
+
+    public CommandResponse run(final CommandResponse response) {
+
+        if (stop) return stop(response);
+
+        if (idleTimeout < 0) throw new IllegalArgumentException("Invalid idle timeout: " + idleTimeout);
+
+        if (running(state)) {
+            response.err().println("Daemon is already running, see " + state);
+            return response.returnCode(-1);
+        }
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+
+            server = new ServerSocket();
+            server.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+            server.setSoTimeout(idleTimeout * 1000);
+
+            final byte[] token = token();
+            writeState(state, server.getLocalPort(), token, workingDirectory);
+            response.out().printf("Listening on %s, state written to %s%n", server.getLocalSocketAddress(), state);
+
+            serve(executor, token, response);
+
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (IOException ex) {
+
+            throw new HandlerException(ex);
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } finally {
+
+            executor.shutdownNow();
+            close(server);
+            state.delete();
+        }
+
+        response.out().println("Daemon stopped");
+        return response.returnCode(0);
+    }
+
+    private void serve(final ExecutorService executor, final byte[] token, final CommandResponse response) throws IOException {
+
+        while (!stopping) {
+
+            final Socket socket;
+            try {
+
+                socket = server.accept();
+            } catch (SocketTimeoutException ex) {
+
+                if (active.get() > 0) continue;
+
+                response.out().println("Stopping after " + idleTimeout + " seconds without requests");
+                return;
+            } catch (SocketException ex) {
+
+                // Closed by stop request
+                if (stopping) return;
+
+                throw ex;
+            }
+
+            executor.submit(new Runnable() {
+                public void run() {
+
+                    active.incrementAndGet();
+                    try {
+
+                        serve(socket, token);
+                    } catch (IOException ex) {
+
+                        response.err().println("Request failed: " + ex.getMessage());
+                    } finally {
+
+                        active.decrementAndGet();
+                        close(socket);
+                    }
+                }
+            });
+        }
+    }
+
+    private void serve(final Socket socket, final byte[] token) throws IOException {
+
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        final InputStream in = new BufferedInputStream(socket.getInputStream());
+        final Frames frames = new Frames(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (!MessageDigest.isEqual(token, readLine(in).getBytes(UTF8))) {
+
+            frames.stream("err").println("Invalid daemon token");
+            frames.exit(-1);
+            return;
+        }
+
+        final String clientDirectory = readLine(in);
+        final String[] args = readArgs(in);
+        socket.setSoTimeout(0);
+
+        if (name().equals(Main.commandName(args))) {
+
+            if (!Arrays.asList(args).contains("--stop")) {
+
+                frames.stream("err").println("Daemon is already running");
+                frames.exit(-1);
+                return;
+            }
+
+            stopping = true;
+            frames.stream("out").println("Stopping daemon");
+            frames.exit(0);
+            close(server);
+            return;
+        }
+
+        if (Arrays.asList(args).contains("-")) {
+
+            frames.stream("err").println("Standard input is not forwarded to daemon, run the command without it");
+            frames.exit(-1);
+            return;
+        }
+
+        if (!new File(clientDirectory).isAbsolute() || !workingDirectory.equals(canonical(clientDirectory))) {
+
+            frames.stream("err").printf(
+                    "Daemon resolves paths against %s, run the command from there or without daemon%n", workingDirectory
+            );
+            frames.exit(-1);
+            return;
+        }
+
+        final CommandResponse response = new CommandResponse(frames.stream("out"), frames.stream("err"));
+        new Main(response, transport).run(args);
+        frames.exit(response.returnCode());
+    }
+
+    private static String[] readArgs(final InputStream in) throws IOException {
+
+        final int count;
+        try {
+
+            count = Integer.parseInt(readLine(in));
+        } catch (NumberFormatException ex) {
+
+            throw new IOException("Invalid number of arguments", ex);
+        }
+
+        if (count < 0 || count > MAX_ARGS) throw new IOException("Invalid number of arguments: " + count);
+
+        final String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = read(in, '\0');
+        }
+        return args;
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+
+        return read(in, '\n');
+    }
+
+    private static String read(final InputStream in, final char terminator) throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != terminator) {
+
+            if (b == -1) throw new IOException("Unexpected end of request");
+            if (buffer.size() >= MAX_ARG_LENGTH) throw new IOException("Request too long");
+
+            buffer.write(b);
+        }
+        return new String(buffer.toByteArray(), UTF8);
+    }
+
+    /**
+     * Ask running daemon to stop.
+     */
+    private CommandResponse stop(final CommandResponse response) {
+
+        if (!state.exists()) {
+            response.err().println("No daemon running, " + state + " does not exist");
+            return response.returnCode(-1);
+        }
+
+        try {
+
+            return response.returnCode(request(state, response, name(), "--stop"));
+        } catch (IOException ex) {
+
+            response.err().println("Unable to reach daemon: " + ex.getMessage());
+            return response.returnCode(-1);
+        }
+    }
+
+    /**
+     * Run command in the daemon described by state file relaying its output to response.
+     *
+     * @return Exit code of the command.
+     */
+    /*package*/ static int request(final File state, final CommandResponse response, final String... args) throws IOException {
+
+        final String[] content = readState(state);
+        final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(content[0]));
+        try {
+
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write((content[1] + "\n" + workingDirectory() + "\n" + args.length + "\n").getBytes(UTF8));
+            for (final String arg: args) {
+                out.write(arg.getBytes(UTF8));
+                out.write(0);
+            }
+            out.flush();
+
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+            String line;
+            while ((line = in.readLine()) != null) {
+
+                if (line.startsWith("out ")) {
+                    response.out().println(line.substring(4));
+                } else if (line.startsWith("err ")) {
+                    response.err().println(line.substring(4));
+                } else if (line.startsWith("exit ")) {
+                    return Integer.parseInt(line.substring(5));
+                }
+            }
+
+            throw new IOException("Connection to daemon lost");
+        } finally {
+
+            socket.close();
+        }
+    }
+
+    private static boolean running(final File state) {
+
+        if (!state.exists()) return false;
+
+        try {
+
+            final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(readState(state)[0]));
+            socket.close();
+            return true;
+        } catch (IOException ex) {
+
+            return false; // Stale state file
+        } catch (RuntimeException ex) {
+
+            return false;
+        }
+    }
+
+    private static String[] readState(final File state) throws IOException {
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(state), UTF8));
+        try {
+
+            final String line = reader.readLine();
+            final String[] content = line == null ? new String[0] : line.trim().split(" ");
+            if (content.length != 2) throw new IOException("Invalid daemon state file " + state);
+
+            return content;
+        } finally {
+
+            reader.close();
+        }
+    }
+
+    /**
+     * Write state so only the owner can read it.
+     */
+    private static void writeState(
+            final File state, final int port, final byte[] token, final String workingDirectory
+    ) throws IOException {
+
+        final File dir = state.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Unable to create " + dir);
+
+        final File tmp = File.createTempFile("daemon", ".tmp", dir);
+        tmp.setReadable(false, false);
+        tmp.setReadable(true, true);
+        tmp.setWritable(false, false);
+        tmp.setWritable(true, true);
+
+        final OutputStream out = new FileOutputStream(tmp);
+        try {
+
+            out.write((port + " " + new String(token, UTF8) + "\n" + workingDirectory + "\n").getBytes(UTF8));
+        } finally {
+
+            out.close();
+        }
+
+        state.delete();
+        if (!tmp.renameTo(state)) throw new IOException("Unable to write " + state);
+    }
+
+    private static byte[] token() {
+
+        final byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+
+        final StringBuilder hex = new StringBuilder(32);
+        for (final byte b: random) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString().getBytes(UTF8);
+    }
+
+    private static String workingDirectory() {
+
+        return canonical(System.getProperty("user.dir"));
+    }
+
+    /**
+     * Canonical form of the path so clients in symlinked directories are recognized.
+     */
+    private static String canonical(final String path) {
+
+        try {
+
+            return new File(path).getCanonicalPath();
+        } catch (IOException ex) {
+
+            return new File(path).getAbsolutePath();
+        }
+    }
+
+    private static File defaultState() {
+
+        final String env = System.getenv("CLONER_DAEMON_STATE");
+        if (env != null) return new File(env);
+
+        return new File(new File(System.getProperty("user.home"), ".config-cloner"), "daemon");
+    }
+
+    private static void close(final @CheckForNull Closeable closeable) {
+
+        if (closeable == null) return;
+
+        try {
+
+            closeable.close();
+        } catch (IOException ex) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Output streams sharing a connection, every line is sent as a frame prefixed by the stream name.
+     */
+    private static final class Frames {
+
+        private final OutputStream sink;
+        private final List<FrameStream> streams = new ArrayList<FrameStream>(2);
+
+        private Frames(final OutputStream sink) {
+            this.sink = sink;
+        }
+
+        private PrintStream stream(final String name) {
+
+            final FrameStream stream = new FrameStream(name);
+            streams.add(stream);
+            try {
+
+                return new PrintStream(stream, true, "UTF-8");
+            } catch (IOException ex) {
+
+                throw new AssertionError(ex);
+            }
+        }
+
+        private void exit(final int code) throws IOException {
+
+            for (final FrameStream stream: streams) {
+                stream.close();
+            }
+
+            synchronized (sink) {
+                sink.write(("exit " + code + "\n").getBytes(UTF8));
+                sink.flush();
+            }
+        }
+
+        private final class FrameStream extends OutputStream {
+
+            private final byte[] prefix;
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            private FrameStream(final String name) {
+                this.prefix = (name + " ").getBytes(UTF8);
+            }
+
+            @Override
+            public synchronized void write(final int b) throws IOException {
+
+                if (b == '\n') {
+                    frame();
+                } else {
+                    line.write(b);
+                }
+            }
+
+            @Override
+            public synchronized void flush() throws IOException {
+
+                synchronized (sink) {
+                    sink.flush();
+                }
+            }
+
+            /**
+             * Send incomplete line, if any.
+             */
+            @Override
+            public synchronized void close() throws IOException {
+
+                if (line.size() > 0) {
+                    frame();
+                }
+            }
+
+            private void frame() throws IOException {
+
+                synchronized (sink) {
+                    sink.write(prefix);
+                    line.writeTo(sink);
+                    sink.write('\n');
+                }
+                line.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Source entity name matching several entities.
+ *
+ * Glob patterns use <tt>*</tt> and <tt>?</tt> wildcards. Destination name is derived by replacing wildcards in the
+ * destination template by the text they matched in source name, in order. Regular expressions derive destination
+ * name using the template as a replacement, so <tt>$1</tt> refers to the first group.
+ */
+/*package*/ final class EntityPattern {
+
+    private final String source;
+    private final Pattern pattern;
+    private final boolean regex;
+
+    private EntityPattern(final String source, final Pattern pattern, final boolean regex) {
+        this.source = source;
+        this.pattern = pattern;
+        this.regex = regex;
+    }
+
+    /**
+     * @return null if the entity is not a pattern.
+     */
+    /*package*/ static @CheckForNull EntityPattern glob(final String entity) {
+
+        if (!isGlob(entity)) return null;
+
+        final StringBuilder regexp = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < entity.length(); i++) {
+
+            final char c = entity.charAt(i);
+            if (c != '*' && c != '?') continue;
+
+            if (literal < i) {
+                regexp.append(Pattern.quote(entity.substring(literal, i)));
+            }
+            regexp.append(c == '*' ? "(.*)" : "(.)");
+            literal = i + 1;
+        }
+
+        if (literal < entity.length()) {
+            regexp.append(Pattern.quote(entity.substring(literal)));
+        }
+
+        return new EntityPattern(entity, Pattern.compile(regexp.toString()), false);
+    }
+
+    /*package*/ static EntityPattern regex(final String entity) {
+
+        try {
+
+            return new EntityPattern(entity, Pattern.compile(entity), true);
+        } catch (PatternSyntaxException ex) {
+
+            throw new IllegalArgumentException("Invalid entity pattern: " + entity, ex);
+        }
+    }
+
+    private static boolean isGlob(final String entity) {
+
+        return entity.indexOf('*') != -1 || entity.indexOf('?') != -1;
+    }
+
+    /*package*/ boolean matches(final String name) {
+
+        return pattern.matcher(name).matches();
+    }
+
+    /**
+     * Make sure template produces distinct names for distinct matches.
+     *
+     * @throws IllegalArgumentException when template does not refer to matched text.
+     */
+    /*package*/ void validateTemplate(final String template) {
+
+        if (template.equals(source)) return;
+
+        final boolean refers = regex ? template.contains("$") : isGlob(template);
+        if (!refers) throw new IllegalArgumentException(
+                "Destination '" + template + "' would receive all entities matching '" + source + "'"
+        );
+    }
+
+    /**
+     * Derive destination name for matching source name.
+     */
+    /*package*/ String rename(final String name, final String template) {
+
+        if (template.equals(source)) return name;
+
+        final Matcher matcher = pattern.matcher(name);
+        if (!matcher.matches()) throw new IllegalArgumentException(
+                "'" + name + "' does not match '" + source + "'"
+        );
+
+        if (regex) return matcher.replaceFirst(template);
+
+        final StringBuilder ret = new StringBuilder(template.length() + name.length());
+        int group = 1;
+        for (int i = 0; i < template.length(); i++) {
+
+            final char c = template.charAt(i);
+            if ((c == '*' || c == '?') && group <= matcher.groupCount()) {
+                ret.append(matcher.group(group++));
+            } else {
+                ret.append(c);
+            }
+        }
+
+        return ret.toString();
+    }
+
+    @Override
+    public String toString() {
+
+        return source;
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.HandlerException;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Transfer all nodes, jobs and views from one instance to others.
+ *
+ * Entities of every type are passed through fetch, transform and send stages connected by bounded queues, each stage
+ * running {@link #parallel} threads. Types are migrated one after another: nodes first so jobs can be tied to them,
+ * jobs before views that refer to them.
+ */
+public class Migrate implements Handler {
+
+    @Argument(multiValued = true, usage = "<SRC> <DST>...", metaVar = "URLS")
+    private List<String> instances = new ArrayList<String>();
+
+    @Option(name = "-f", aliases = { "--force" }, usage = "Overwrite target configuration if exists")
+    private boolean force = false;
+
+    @Option(name = "-e", aliases = { "--expression" }, usage = "Transform configuration")
+    private List<String> expressions = new ArrayList<String>();
+
+    @Option(name = "--xpath", metaVar = "XPATH=VALUE", usage = "Set value of all nodes matching XPATH")
+    private List<String> xpaths = new ArrayList<String>();
+
+    @Option(name = "--xslt", metaVar = "FILE", usage = "Transform configuration using XSLT stylesheet")
+    private List<String> stylesheets = new ArrayList<String>();
+
+    @Option(name = "-n", aliases = { "--dry-run" }, usage = "Do not perform any modifications to any instance")
+    private boolean dryRun = false;
+
+    @Option(name = "--parallel", metaVar = "N", usage = "Run N threads in every stage")
+    private int parallel = 4;
+
+    @Option(name = "--queue", metaVar = "N", usage = "Keep up to N entities between stages")
+    private int queue = 16;
+
+    @Option(name = "--bulk-threshold", metaVar = "N",
+            usage = "Fetch and send configurations using one groovy command per instance when there is more than N entities of a type. 0 disables")
+    private int bulkThreshold = 20;
+
+    @Option(name = "--connect-timeout", metaVar = "SECONDS", usage = "Fail unless all instances are connected in time")
+    private int connectTimeout = 60;
+
+    private final ConfigTransfer config;
+
+    public Migrate(final ConfigTransfer config) {
+        this.config = config;
+    }
+
+    public String name() {
+        return "migrate";
+    }
+
+    public String description() {
+        return "Migrate all nodes, jobs and views from <SRC> to <DST>";
+    }
+
+    public CommandResponse run(final CommandResponse response) {
+
+        if (instances.size() < 2) throw new IllegalArgumentException("Expecting 2 or more positional arguments");
+        if (parallel < 1) throw new IllegalArgumentException("Invalid number of threads: " + parallel);
+        if (queue < 1) throw new IllegalArgumentException("Invalid queue size: " + queue);
+
+        final ConfigDestination source = new ConfigDestination(instances.get(0), "");
+        final List<ConfigDestination> destinations = new ArrayList<ConfigDestination>(instances.size() - 1);
+        for (final String instance: instances.subList(1, instances.size())) {
+
+            final ConfigDestination dest = new ConfigDestination(instance, "");
+            if (dest.equals(source)) throw new IllegalArgumentException(
+                    "Source and destination represent the same instance: " + instance
+            );
+            destinations.add(dest);
+        }
+
+        if (!dryRun) {
+
+            final List<JenkinsInstance> all = new ArrayList<JenkinsInstance>(destinations.size() + 1);
+            all.add(source.instance());
+            for (final ConfigDestination dest: destinations) {
+                all.add(dest.instance());
+            }
+            config.warmUp(all, connectTimeout, TimeUnit.SECONDS);
+        }
+
+        for (final TransferHandler kind: Arrays.asList(
+                configure(new CloneNode(config)), configure(new CloneJob(config)), configure(new CloneView(config))
+        )) {
+
+            migrate(kind, source, destinations, response);
+        }
+
+        return response;
+    }
+
+    private TransferHandler configure(final TransferHandler kind) {
+
+        kind.force = force;
+        kind.dryRun = dryRun;
+        kind.expressions = expressions;
+        kind.xpaths = xpaths;
+        kind.stylesheets = stylesheets;
+        kind.bulkThreshold = bulkThreshold;
+        return kind;
+    }
+
+    private void migrate(
+            final TransferHandler kind,
+            final ConfigDestination source,
+            final List<ConfigDestination> destinations,
+            final CommandResponse response
+    ) {
+
+        response.out().printf("Listing %ss on %s%n", kind.name(), source.instance());
+        final List<String> names = kind.listNames(source, response);
+        if (names == null) return;
+
+        final List<Item> items = new ArrayList<Item>(names.size());
+        final BlockingQueue<Item> listed = new LinkedBlockingQueue<Item>();
+        for (final String name: names) {
+
+            final Item item = new Item(source.newEntity(name));
+            items.add(item);
+            listed.add(item);
+        }
+        listed.add(END);
+
+        final BlockingQueue<Item> fetched = new ArrayBlockingQueue<Item>(queue);
+        final BlockingQueue<Item> transformed = new ArrayBlockingQueue<Item>(queue);
+
+        kind.planFetch(source, names, response);
+        final BulkSend sender = kind.planSend(names.size(), response.err());
+        final ExecutorService executor = Executors.newFixedThreadPool(3 * parallel);
+        try {
+
+            final List<Future<Void>> workers = new ArrayList<Future<Void>>(3 * parallel);
+            final AtomicInteger fetching = new AtomicInteger(parallel);
+            final AtomicInteger transforming = new AtomicInteger(parallel);
+            final AtomicInteger sending = new AtomicInteger(parallel);
+            for (int i = 0; i < parallel; i++) {
+
+                workers.add(executor.submit(new Stage(listed, fetched, fetching) {
+                    @Override
+                    protected void process(final Item item) {
+
+                        item.response.out().println("Fetching " + item.source);
+                        final CommandResponse.Accumulator xml = kind.fetch(item.source);
+                        try {
+
+                            if (xml.succeeded()) {
+                                item.xml = xml.stdout();
+                            } else {
+                                item.response.merge(xml);
+                            }
+                        } finally {
+
+                            xml.close();
+                        }
+                    }
+                }));
+
+                workers.add(executor.submit(new Stage(fetched, transformed, transforming) {
+                    @Override
+                    protected void process(final Item item) {
+
+                        item.xml = kind.getXml(item.source, item.xml, item.response);
+                    }
+                }));
+
+                workers.add(executor.submit(new Stage(transformed, null, sending) {
+                    private final List<Item> batch = new ArrayList<Item>();
+                    private long bytes = 0;
+
+                    @Override
+                    protected void process(final Item item) {
+
+                        if (sender != null) {
+
+                            batch.add(item);
+                            bytes += item.xml.length();
+                            if (batch.size() * destinations.size() >= BulkSend.CHUNK || bytes >= BulkSend.CHUNK_BYTES) {
+                                finish();
+                            }
+                            return;
+                        }
+
+                        for (final ConfigDestination dest: destinations) {
+
+                            final ConfigDestination destination = dest.newEntity(item.source.entity());
+                            item.response.out().println("Sending " + destination);
+                            kind.send(destination, item.response, item.xml);
+                        }
+                        item.xml = null;
+                    }
+
+                    @Override
+                    protected void finish() {
+
+                        if (batch.isEmpty()) return;
+
+                        final List<BulkSend.Delivery> deliveries = new ArrayList<BulkSend.Delivery>();
+                        for (final Item item: batch) {
+                            for (final ConfigDestination dest: destinations) {
+                                deliveries.add(new BulkSend.Delivery(
+                                        dest.newEntity(item.source.entity()), item.xml, item.response
+                                ));
+                            }
+                        }
+
+                        try {
+
+                            sender.send(deliveries);
+                        } catch (RuntimeException ex) {
+
+                            for (final Item item: batch) {
+                                ex.printStackTrace(item.response.err());
+                                item.response.returnCode(-1);
+                            }
+                        } finally {
+
+                            for (final Item item: batch) {
+                                item.xml = null;
+                            }
+                            batch.clear();
+                            bytes = 0;
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<Void> worker: workers) {
+                worker.get();
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } catch (ExecutionException ex) {
+
+            throw new HandlerException(ex);
+        } finally {
+
+            executor.shutdownNow();
+            kind.endFetch();
+        }
+
+        int failed = 0;
+        for (final Item item: items) {
+
+            if (!item.response.succeeded()) {
+                failed++;
+            }
+            response.merge(item.response);
+            item.response.close();
+        }
+
+        response.out().printf("Migrated %d of %d %ss%n", items.size() - failed, items.size(), kind.name());
+    }
+
+    private static final Item END = new Item(null);
+
+    /**
+     * Entity passing through the pipeline.
+     */
+    private static final class Item {
+
+        private final ConfigDestination source;
+        private final CommandResponse.Accumulator response = CommandResponse.accumulate();
+        private volatile String xml;
+
+        private Item(final ConfigDestination source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Worker taking items from one queue and passing those that succeeded to the next one.
+     *
+     * Last worker of the stage to finish signals the end to the next stage.
+     */
+    private static abstract class Stage implements Callable<Void> {
+
+        private final BlockingQueue<Item> in;
+        private final BlockingQueue<Item> out;
+        private final AtomicInteger running;
+
+        private Stage(final BlockingQueue<Item> in, final BlockingQueue<Item> out, final AtomicInteger running) {
+            this.in = in;
+            this.out = out;
+            this.running = running;
+        }
+
+        public Void call() throws InterruptedException {
+
+            try {
+
+                while (true) {
+
+                    final Item item = in.take();
+                    if (item == END) {
+                        // Let other workers of this stage know
+                        in.put(END);
+                        finish();
+                        return null;
+                    }
+
+                    try {
+
+                        process(item);
+                    } catch (RuntimeException ex) {
+
+                        ex.printStackTrace(item.response.err());
+                        item.response.returnCode(-1);
+                    }
+
+                    if (out != null && item.response.succeeded()) {
+                        out.put(item);
+                    }
+                }
+            } finally {
+
+                if (running.decrementAndGet() == 0 && out != null) {
+                    out.put(END);
+                }
+            }
+        }
+
+        protected abstract void process(Item item);
+
+        /**
+         * Process items held back once there are no more items to come. Does nothing by default.
+         */
+        protected void finish() {}
+    }
+}
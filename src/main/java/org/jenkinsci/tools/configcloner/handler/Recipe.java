@@ -33,10 +33,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.codehaus.groovy.control.CompilationFailedException;
-import org.jenkinsci.tools.configcloner.CLIPool;
 import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
 import org.jenkinsci.tools.configcloner.Main;
+import org.jenkinsci.tools.configcloner.Transport;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
@@ -45,7 +45,7 @@ import groovy.lang.GroovyShell;
 
 public class Recipe implements Handler {
 
-    private final CLIPool cliPool;
+    private final Transport transport;
 
     @Argument(metaVar = "RECIPE", required = true, usage = "Recipe file to be executed")
     private String recipe;
@@ -60,9 +60,9 @@ public class Recipe implements Handler {
 
     protected final ConfigTransfer config;
 
-    public Recipe(ConfigTransfer config, CLIPool cliPool) {
+    public Recipe(ConfigTransfer config, Transport transport) {
         this.config = config;
-        this.cliPool = cliPool;
+        this.transport = transport;
     }
 
     public String name() {
@@ -76,7 +76,7 @@ public class Recipe implements Handler {
     public CommandResponse run(CommandResponse response) {
 
         final GroovyShell shell = new GroovyShell(initBinding(
-                cliPool, response
+                transport, response
         ));
 
         try {
@@ -96,10 +96,10 @@ public class Recipe implements Handler {
         return response.returnCode(recipeResult);
     }
 
-    private Binding initBinding(final CLIPool cliPool, final CommandResponse response) {
+    private Binding initBinding(final Transport transport, final CommandResponse response) {
 
         final Binding binding = new Binding();
-        binding.setProperty("clone", new Dsl(cliPool, response));
+        binding.setProperty("clone", new Dsl(transport, response));
         binding.setProperty("properties", Collections.unmodifiableMap(properties));
         binding.setProperty("out", response.out());
         binding.setProperty("err", response.err());
@@ -109,11 +109,11 @@ public class Recipe implements Handler {
     // TODO: Generate this from existing TransferHandlers
     private class Dsl {
 
-        private final CLIPool cliPool;
+        private final Transport transport;
         private final CommandResponse response;
 
-        public Dsl(CLIPool cliPool, CommandResponse response) {
-            this.cliPool = cliPool;
+        public Dsl(Transport transport, CommandResponse response) {
+            this.transport = transport;
             this.response = response;
         }
 
@@ -146,7 +146,7 @@ public class Recipe implements Handler {
             effectiveArgs.addAll(commandArgs);
 
             final String[] arrayArgs = effectiveArgs.toArray(new String[effectiveArgs.size()]);
-            CommandResponse result = new Main(response, cliPool).run(arrayArgs);
+            CommandResponse result = new Main(response, transport, config.timings()).run(arrayArgs);
 
             if (recipeResult == 0 && result.returnCode() != 0) {
 
@@ -23,45 +23,89 @@
  */
 package org.jenkinsci.tools.configcloner.handler;
 
-import difflib.DiffUtils;
-import difflib.Patch;
-import hudson.Util;
 import hudson.cli.NoCheckTrustManager;
 import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.Destinations;
+import org.jenkinsci.tools.configcloner.HandlerException;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
 import org.jenkinsci.tools.configcloner.UrlParser;
+import org.jenkinsci.tools.configcloner.transform.SedScript;
+import org.jenkinsci.tools.configcloner.transform.StreamingRewrite;
+import org.jenkinsci.tools.configcloner.transform.UnifiedDiff;
+import org.jenkinsci.tools.configcloner.transform.XmlTransformation;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
-import org.unix4j.Unix4j;
-import org.unix4j.builder.Unix4jCommandBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 public abstract class TransferHandler implements Handler {
 
-    @Argument(multiValued = true, usage = "[<SRC>] [<DST>...]", metaVar = "URLS")
+    @Argument(multiValued = true, usage = "[<SRC>] [<DST>...] [@<FILE>...]", metaVar = "URLS")
     private List<String> entities = new ArrayList<String>();
 
+    @Option(name = "--destinations-from", metaVar = "FILE",
+            usage = "Read destinations from FILE, one per line. Use - to read standard input")
+    protected List<String> manifests = new ArrayList<String>();
+
     @Option(name = "-f", aliases = { "--force" }, usage = "Overwrite target configuration if exists")
     protected boolean force = false;
 
     @Option(name = "-e", aliases = { "--expression" }, usage = "Transform configuration")
     protected List<String> expressions = new ArrayList<String>();
 
+    @Option(name = "--xpath", metaVar = "XPATH=VALUE", usage = "Set value of all nodes matching XPATH")
+    protected List<String> xpaths = new ArrayList<String>();
+
+    @Option(name = "--xslt", metaVar = "FILE", usage = "Transform configuration using XSLT stylesheet")
+    protected List<String> stylesheets = new ArrayList<String>();
+
+    @Option(name = "--regex", usage = "Source entity is a regular expression selecting entities to transfer")
+    protected boolean regex = false;
+
     @Option(name = "-n", aliases = { "--dry-run" }, usage = "Do not perform any modifications to any instance")
     protected boolean dryRun = false;
-    
+
+    @Option(name = "--parallel", metaVar = "N", usage = "Send to up to N destinations concurrently")
+    protected int parallel = 1;
+
+    @Option(name = "--stream-threshold", metaVar = "BYTES",
+            usage = "Stream configurations of BYTES or more to destinations without transforming them in memory")
+    protected int streamThreshold = 1024 * 1024;
+
+    @Option(name = "--bulk-threshold", metaVar = "N",
+            usage = "Fetch and send configurations using one groovy command per instance when transferring more than N entities. 0 disables")
+    protected int bulkThreshold = 20;
+
+    @Option(name = "--connect-timeout", metaVar = "SECONDS", usage = "Fail unless all instances are connected in time")
+    protected int connectTimeout = 60;
+
     @Option(name = "-i", aliases = { "--insecure" }, usage = "Do not check SSL certificate")
     private void setInsecure(boolean insecure) throws NoSuchAlgorithmException, KeyManagementException {
         if (insecure == true) {
@@ -80,6 +124,12 @@ public abstract class TransferHandler implements Handler {
 
     protected final ConfigTransfer config;
 
+    private volatile @CheckForNull BulkFetch bulk;
+
+    // Compiled on first use and reused for every entity of the run
+    private @CheckForNull SedScript script;
+    private @CheckForNull XmlTransformation transformation;
+
     protected TransferHandler(final ConfigTransfer config) {
         this.config = config;
     }
@@ -91,80 +141,789 @@ public abstract class TransferHandler implements Handler {
      */
     public CommandResponse run(final CommandResponse response) {
 
+        if (parallel < 1) throw new IllegalArgumentException("Invalid number of threads: " + parallel);
+
         // Get both of these before doing any work to fail validation early.
         final ConfigDestination source = this.source();
         final List<ConfigDestination> destinations = this.destinations();
 
-        response.out().println("Fetching " + source);
-        final CommandResponse.Accumulator xml = config.execute(
-                source, "", this.getCommandName(), source.entity()
+        final EntityPattern pattern = regex
+                ? EntityPattern.regex(source.entity())
+                : EntityPattern.glob(source.entity())
+        ;
+
+        // Connect to all instances up front so unreachable ones fail before anything is modified.
+        if (!dryRun) {
+
+            final List<JenkinsInstance> instances = new ArrayList<JenkinsInstance>(destinations.size() + 1);
+            instances.add(source.instance());
+            for (final ConfigDestination dest: destinations) {
+                instances.add(dest.instance());
+            }
+            config.warmUp(instances, connectTimeout, TimeUnit.SECONDS);
+        }
+
+        final Destinations all = new Destinations(
+                urlParser(), source, destinations, manifests(), System.in, response.err()
         );
+        try {
+
+            if (pattern == null) {
+                transfer(source, all, response, parallel > 1);
+            } else {
+                transferMatching(source, pattern, all, response);
+            }
+        } finally {
+
+            all.close();
+        }
+
+        if (all.failed() && response.succeeded()) {
+            response.returnCode(-1);
+        }
+
+        return response;
+    }
+
+    /**
+     * Transfer every entity matching the pattern, up to {@link #parallel} entities at a time.
+     *
+     * Entities are listed once and destination names are derived from matching source names. Configurations of many
+     * entities are fetched and sent in bulk.
+     */
+    private CommandResponse transferMatching(
+            final ConfigDestination source,
+            final EntityPattern pattern,
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response
+    ) {
+
+        // Destinations are reused for every match, all of them are known only once manifests are read
+        final List<ConfigDestination> templates = new ArrayList<ConfigDestination>();
+        while (destinations.hasNext()) {
+
+            final ConfigDestination template = destinations.next();
+            pattern.validateTemplate(template.entity());
+            templates.add(template);
+        }
+
+        response.out().println("Listing " + source);
+        final List<String> names = listNames(source, response);
+        if (names == null) return response;
+
+        final List<String> matches = new ArrayList<String>();
+        for (final String name: names) {
+            if (pattern.matches(name)) {
+                matches.add(name);
+            }
+        }
+
+        if (matches.isEmpty()) {
+            response.err().println("No entity matches " + source);
+            return response.returnCode(-1);
+        }
+
+        response.out().printf("Transferring %d entities matching %s%n", matches.size(), source);
+        planFetch(source, matches, response);
+        try {
+
+            final BulkSend sender = planSend(matches.size(), response.err());
+            if (sender != null) return transferMatching(source, matches, pattern, templates, sender, response);
+
+            return transferMatching(source, matches, pattern, templates, response);
+        } finally {
+
+            endFetch();
+        }
+    }
+
+    private CommandResponse transferMatching(
+            final ConfigDestination source,
+            final List<String> matches,
+            final EntityPattern pattern,
+            final List<ConfigDestination> templates,
+            final CommandResponse response
+    ) {
+
+        final Step<String> step = new Step<String>() {
+            public void run(final String name, final CommandResponse rsp) {
+
+                transfer(source.newEntity(name), renamed(name, pattern, templates).iterator(), rsp, false);
+            }
+        };
+
+        if (parallel <= 1) return transferSequentially(source, matches, pattern, templates, response);
+
+        return concurrently(matches.iterator(), response, step);
+    }
+
+    /**
+     * Transfer matching entities one after another fetching the next one while the current one is being sent.
+     */
+    private CommandResponse transferSequentially(
+            final ConfigDestination source,
+            final List<String> matches,
+            final EntityPattern pattern,
+            final List<ConfigDestination> templates,
+            final CommandResponse response
+    ) {
+
+        ListenableFuture<CommandResponse.Accumulator> next = fetchAsync(source.newEntity(matches.get(0)));
+        try {
+
+            for (int i = 0; i < matches.size(); i++) {
+
+                final String name = matches.get(i);
+                final ListenableFuture<CommandResponse.Accumulator> current = next;
+                next = i + 1 < matches.size() ? fetchAsync(source.newEntity(matches.get(i + 1))) : null;
+
+                final ConfigDestination entity = source.newEntity(name);
+                response.out().println("Fetching " + entity);
+                final Iterator<ConfigDestination> destinations = renamed(name, pattern, templates).iterator();
+                transfer(entity, current.get(), destinations, response, false);
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } catch (ExecutionException ex) {
+
+            throw new HandlerException(ex);
+        } finally {
+
+            if (next != null) {
+                discard(next);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Wait for the response not to be used and close it.
+     */
+    private static void discard(final Future<CommandResponse.Accumulator> future) {
+
+        try {
+
+            future.get().close();
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+
+            // Nothing to close
+        }
+    }
+
+    /**
+     * Transfer matching entities sending configurations in bulk.
+     *
+     * Up to {@link #parallel} entities are fetched and transformed at a time until there is a chunk worth sending,
+     * output of every entity is merged once it is sent.
+     */
+    private CommandResponse transferMatching(
+            final ConfigDestination source,
+            final List<String> matches,
+            final EntityPattern pattern,
+            final List<ConfigDestination> templates,
+            final BulkSend sender,
+            final CommandResponse response
+    ) {
+
+        final Chunk chunk = new Chunk(sender, response);
+        pipeline(matches.iterator(), new Task<String, Prepared>() {
+            public Prepared run(final String name) {
+
+                return prepare(source.newEntity(name), renamed(name, pattern, templates));
+            }
+        }, chunk);
+
+        chunk.flush();
+        return response;
+    }
+
+    /**
+     * Fetch and transform configuration of the entity to be sent to destinations.
+     */
+    private Prepared prepare(final ConfigDestination entity, final List<ConfigDestination> renamed) {
+
+        final Prepared prepared = new Prepared();
+        final CommandResponse.Accumulator rsp = prepared.response;
+        try {
+
+            rsp.out().println("Fetching " + entity);
+            final CommandResponse.Accumulator xml = fetch(entity);
+            try {
+
+                if (xml.succeeded()) {
+
+                    final Iterator<ConfigDestination> destinations = transferContained(
+                            entity, xml, renamed.iterator(), rsp
+                    );
+                    final String transformed = getXml(entity, xml.stdout(), rsp);
+                    while (destinations.hasNext()) {
+
+                        prepared.deliveries.add(new BulkSend.Delivery(destinations.next(), transformed, rsp));
+                        prepared.bytes += transformed.length();
+                    }
+                } else {
+
+                    rsp.merge(xml);
+                }
+            } finally {
+
+                xml.close();
+            }
+        } catch (RuntimeException ex) {
+
+            ex.printStackTrace(rsp.err());
+            rsp.returnCode(-1);
+            prepared.deliveries.clear();
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Entity fetched and transformed, waiting to be sent.
+     */
+    private static final class Prepared {
+
+        private final CommandResponse.Accumulator response = CommandResponse.accumulate();
+        private final List<BulkSend.Delivery> deliveries = new ArrayList<BulkSend.Delivery>();
+        private long bytes = 0;
+    }
+
+    /**
+     * Deliveries collected in order to be sent at once.
+     */
+    private static final class Chunk implements Sink<Prepared> {
+
+        private final BulkSend sender;
+        private final CommandResponse response;
+        private final List<BulkSend.Delivery> deliveries = new ArrayList<BulkSend.Delivery>();
+        private final List<CommandResponse.Accumulator> responses = new ArrayList<CommandResponse.Accumulator>();
+        private long bytes = 0;
+
+        private Chunk(final BulkSend sender, final CommandResponse response) {
+            this.sender = sender;
+            this.response = response;
+        }
+
+        public void accept(final Prepared prepared) {
+
+            responses.add(prepared.response);
+            deliveries.addAll(prepared.deliveries);
+            bytes += prepared.bytes;
+
+            if (deliveries.size() >= BulkSend.CHUNK || bytes >= BulkSend.CHUNK_BYTES) {
+                flush();
+            }
+        }
+
+        private void flush() {
+
+            try {
+
+                sender.send(deliveries);
+                for (final CommandResponse.Accumulator rsp: responses) {
+                    response.merge(rsp);
+                }
+            } finally {
+
+                for (final CommandResponse.Accumulator rsp: responses) {
+                    rsp.close();
+                }
+                deliveries.clear();
+                responses.clear();
+                bytes = 0;
+            }
+        }
+    }
+
+    private List<ConfigDestination> renamed(
+            final String name,
+            final EntityPattern pattern,
+            final List<ConfigDestination> templates
+    ) {
+
+        final List<ConfigDestination> renamed = new ArrayList<ConfigDestination>(templates.size());
+        for (final ConfigDestination template: templates) {
+            renamed.add(template.newEntity(pattern.rename(name, template.entity())));
+        }
+        return renamed;
+    }
+
+    /**
+     * Fetch configuration from source and send it to all destinations.
+     */
+    private CommandResponse transfer(
+            final ConfigDestination source,
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response,
+            final boolean concurrently
+    ) {
+
+        response.out().println("Fetching " + source);
+        return transfer(source, fetch(source), destinations, response, concurrently);
+    }
+
+    /**
+     * Send fetched configuration to all destinations.
+     */
+    private CommandResponse transfer(
+            final ConfigDestination source,
+            final CommandResponse.Accumulator xml,
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response,
+            final boolean concurrently
+    ) {
+
+        try {
+
+            if (!xml.succeeded()) return response.merge(xml);
+
+            return send(source, transferContained(source, xml, destinations, response), response, xml, concurrently);
+        } finally {
 
-        if (!xml.succeeded()) return response.merge(xml);
+            xml.close();
+        }
+    }
+
+    private CommandResponse send(
+            final ConfigDestination source,
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response,
+            final CommandResponse.Accumulator xml,
+            final boolean concurrently
+    ) {
 
-        for (final ConfigDestination dest: destinations) {
+        // Destination independent transformation is performed once, only fixupConfig is applied per destination.
+        final Payload payload = !transforms() && !dryRun && xml.stdoutSize() >= streamThreshold
+                ? new StreamedPayload(xml)
+                : new TransformedPayload(getXml(source, xml.stdout(), response))
+        ;
 
+        if (concurrently) return sendConcurrently(destinations, response, payload);
+
+        while (destinations.hasNext()) {
+
+            final ConfigDestination dest = destinations.next();
             response.out().println("Sending " + dest);
-            send(dest, response, xml);
+            send(dest, response, payload);
         }
 
         return response;
     }
 
+    /**
+     * Send to destinations using up to {@link #parallel} threads.
+     */
+    private CommandResponse sendConcurrently(
+            final Iterator<ConfigDestination> destinations,
+            final CommandResponse response,
+            final Payload payload
+    ) {
+
+        return concurrently(destinations, response, new Step<ConfigDestination>() {
+            public void run(final ConfigDestination dest, final CommandResponse rsp) {
+
+                rsp.out().println("Sending " + dest);
+                send(dest, rsp, payload);
+            }
+        });
+    }
+
+    /**
+     * Unit of work performed concurrently writing its output to given response.
+     */
+    private interface Step<T> {
+        void run(T item, CommandResponse response);
+    }
+
+    /**
+     * Unit of work performed concurrently producing a result.
+     */
+    private interface Task<T, R> {
+        R run(T item);
+    }
+
+    /**
+     * Consumer of task results.
+     */
+    private interface Sink<R> {
+        void accept(R result);
+    }
+
+    /**
+     * Perform step for every item using up to {@link #parallel} threads.
+     *
+     * Output of every item is accumulated separately and merged in the order items were given.
+     */
+    private <T> CommandResponse concurrently(
+            final Iterator<T> items,
+            final CommandResponse response,
+            final Step<T> step
+    ) {
+
+        pipeline(items, new Task<T, CommandResponse.Accumulator>() {
+            public CommandResponse.Accumulator run(final T item) {
+
+                final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+                try {
+
+                    step.run(item, rsp);
+                } catch (RuntimeException ex) {
+
+                    ex.printStackTrace(rsp.err());
+                    rsp.returnCode(-1);
+                }
+                return rsp;
+            }
+        }, new Sink<CommandResponse.Accumulator>() {
+            public void accept(final CommandResponse.Accumulator rsp) {
+
+                merge(response, rsp);
+            }
+        });
+
+        return response;
+    }
+
+    /**
+     * Run task for every item using up to {@link #parallel} threads passing results to sink in the order items were
+     * given.
+     *
+     * Sink is invoked from the calling thread. Only a bounded window of items is in flight so items can be consumed as
+     * they are read.
+     */
+    private <T, R> void pipeline(final Iterator<T> items, final Task<T, R> task, final Sink<R> sink) {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        try {
+
+            final Deque<Future<R>> pending = new ArrayDeque<Future<R>>();
+
+            while (items.hasNext()) {
+
+                if (pending.size() >= 2 * parallel) {
+                    sink.accept(pending.removeFirst().get());
+                }
+
+                final T item = items.next();
+                pending.add(executor.submit(new Callable<R>() {
+                    public R call() {
+
+                        return task.run(item);
+                    }
+                }));
+            }
+
+            for (final Future<R> result: pending) {
+
+                sink.accept(result.get());
+            }
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new HandlerException(ex);
+        } catch (ExecutionException ex) {
+
+            throw new HandlerException(ex);
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Names of all entities on the instance.
+     *
+     * @return null if listing failed. The failure is merged to response.
+     */
+    /*package*/ @CheckForNull List<String> listNames(final ConfigDestination instance, final CommandResponse response) {
+
+        final CommandResponse.Accumulator list = listEntities(instance);
+        try {
+
+            if (!list.succeeded()) {
+                response.merge(list);
+                return null;
+            }
+
+            final List<String> names = new ArrayList<String>();
+            for (final String line: list.stdout().split("\\r?\\n")) {
+
+                final String name = line.trim();
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+            return names;
+        } finally {
+
+            list.close();
+        }
+    }
+
+    /**
+     * Fetch configurations of the entities in bulk provided there is more than {@link #bulkThreshold} of them.
+     *
+     * Entities are expected to be passed to {@link #fetch(ConfigDestination)} in the order given. Call
+     * {@link #endFetch()} once done.
+     */
+    /*package*/ void planFetch(final ConfigDestination instance, final List<String> names, final CommandResponse response) {
+
+        final String lookup = fetchLookup();
+        if (lookup == null || bulkThreshold <= 0 || names.size() <= bulkThreshold) return;
+
+        bulk = new BulkFetch(config, instance, lookup, names, response.err());
+    }
+
+    /*package*/ void endFetch() {
+
+        final BulkFetch bulk = this.bulk;
+        if (bulk != null) {
+            bulk.close();
+            this.bulk = null;
+        }
+    }
+
+    /**
+     * Send configurations in bulk provided there is more than {@link #bulkThreshold} entities to transfer.
+     *
+     * @return null if the configurations should be sent one by one.
+     */
+    /*package*/ @CheckForNull BulkSend planSend(final int count, final PrintStream log) {
+
+        final String statements = sendStatements();
+        if (statements == null || dryRun || bulkThreshold <= 0 || count <= bulkThreshold) return null;
+
+        return new BulkSend(this, config, statements, log);
+    }
+
+    /*package*/ CommandResponse.Accumulator fetch(final ConfigDestination source) {
+
+        final BulkFetch bulk = this.bulk;
+        if (bulk != null) {
+
+            final CommandResponse.Accumulator fetched = bulk.take(source);
+            if (fetched != null) return fetched;
+        }
+
+        return config.execute(source, "", this.getCommandName(), source.entity());
+    }
+
+    /**
+     * Fetch configuration without blocking the caller.
+     */
+    /*package*/ ListenableFuture<CommandResponse.Accumulator> fetchAsync(final ConfigDestination source) {
+
+        final BulkFetch bulk = this.bulk;
+        if (bulk != null) {
+
+            final CommandResponse.Accumulator fetched = bulk.take(source);
+            if (fetched != null) return Futures.immediateFuture(fetched);
+        }
+
+        return config.executeAsync(source, "", this.getCommandName(), source.entity());
+    }
+
+    /**
+     * Send transformed configuration to destination applying {@link #fixupConfig(String, ConfigDestination)}.
+     */
+    /*package*/ CommandResponse send(final ConfigDestination destination, final CommandResponse response, final String xml) {
+
+        return send(destination, response, new TransformedPayload(xml));
+    }
+
+    private void merge(final CommandResponse response, final CommandResponse.Accumulator rsp) {
+
+        try {
+
+            response.merge(rsp);
+        } finally {
+
+            rsp.close();
+        }
+    }
+
     private CommandResponse send(
             final ConfigDestination destination,
             final CommandResponse response,
-            final CommandResponse.Accumulator xml
+            final Payload payload
     ) {
 
-        final String destJob = destination.entity();
+        if (dryRun) return response.returnCode(0);
 
-        final String xmlString = getXml(fixupConfig(xml.stdout(), destination), response);
+        final long start = System.nanoTime();
+        try {
 
-        if (dryRun) return response.returnCode(0);
+            return sendPayload(destination, response, payload);
+        } finally {
+
+            config.timings().record("send", destination.instance().toString(), System.nanoTime() - start);
+        }
+    }
+
+    private CommandResponse sendPayload(
+            final ConfigDestination destination,
+            final CommandResponse response,
+            final Payload payload
+    ) {
 
         if (force) {
 
-            final CommandResponse.Accumulator rsp = config.execute(
-                    destination, xmlString, this.updateCommandName(), destJob
-            );
+            final CommandResponse.Accumulator rsp = payload.send(destination, this.updateCommandName());
+            try {
 
-            if (rsp.succeeded()) {
-                return response.returnCode(0);
-            } else {
-                response.err().println("Updating xml failed with stderr:" + rsp.stderr());
-                response.err().println("Updating xml failed with stdout:" + rsp.stdout());
+                if (rsp.succeeded()) {
+                    return response.returnCode(0);
+                } else {
+                    response.err().println("Updating xml failed with stderr:" + rsp.stderr());
+                    response.err().println("Updating xml failed with stdout:" + rsp.stdout());
+                }
+            } finally {
+
+                rsp.close();
             }
         }
 
-        return response.merge(
-                config.execute(destination, xmlString, this.createCommandName(), destJob)
-        );
+        final CommandResponse.Accumulator rsp = payload.send(destination, this.createCommandName());
+        try {
+
+            return response.merge(rsp);
+        } finally {
+
+            rsp.close();
+        }
+    }
+
+    /**
+     * Configuration to be sent to destinations.
+     */
+    private interface Payload {
+        CommandResponse.Accumulator send(ConfigDestination destination, String command);
+    }
+
+    private final class TransformedPayload implements Payload {
+
+        private final String transformed;
+
+        private TransformedPayload(final String transformed) {
+            this.transformed = transformed;
+        }
+
+        public CommandResponse.Accumulator send(final ConfigDestination destination, final String command) {
+
+            return config.execute(destination, fixupConfig(transformed, destination), command, destination.entity());
+        }
+    }
+
+    /**
+     * Pass fetched bytes to destination without decoding, applying {@link #streamingFixup(ConfigDestination)} if any.
+     */
+    private final class StreamedPayload implements Payload {
+
+        private final CommandResponse.Accumulator fetched;
+
+        private StreamedPayload(final CommandResponse.Accumulator fetched) {
+            this.fetched = fetched;
+        }
+
+        public CommandResponse.Accumulator send(final ConfigDestination destination, final String command) {
+
+            final StreamingRewrite fixup = streamingFixup(destination);
+            final InputStream stdin = fixup == null
+                    ? fetched.stdoutStream()
+                    : fixup.pipe(fetched.stdoutStream())
+            ;
+
+            try {
+
+                return config.execute(destination, stdin, command, destination.entity());
+            } finally {
+
+                // Command might not have read it all
+                try {
+
+                    stdin.close();
+                } catch (IOException ex) {
+
+                    // Nothing to release
+                }
+            }
+        }
     }
 
-    private String getXml(String rawXml, CommandResponse response) {
+    private boolean transforms() {
 
-        if (expressions.isEmpty()) return rawXml;
+        return !expressions.isEmpty() || !xpaths.isEmpty() || !stylesheets.isEmpty();
+    }
+
+    /**
+     * Apply sed expressions, XPath assignments and XSLT stylesheets in that order.
+     */
+    /*package*/ String getXml(ConfigDestination source, String rawXml, CommandResponse response) {
+
+        if (!transforms()) return rawXml;
+
+        final long start = System.nanoTime();
 
-        Unix4jCommandBuilder builder = Unix4j.fromString(rawXml);
-        for (String expr: expressions) {
-            builder = builder.sed(expr);
+        String newXml = rawXml;
+        final SedScript script = script();
+        if (script != null) {
+            newXml = script.apply(newXml);
         }
 
-        final String newXml = builder.toStringResult();
+        final XmlTransformation transformation = transformation();
+        if (transformation != null) {
+            newXml = transformation.apply(newXml);
+        }
+
+        config.timings().record("transform", source.instance().toString(), System.nanoTime() - start);
 
-        if (dryRun) response.out().print(describeTransformation(rawXml, newXml));
+        if (dryRun) describeTransformation(rawXml, newXml, response.out());
 
         return newXml;
     }
 
-    private String describeTransformation(String rawXml, String newXml) {
+    private synchronized @CheckForNull SedScript script() {
 
-        final List<String> rawLines = Arrays.asList(rawXml.split("\\r?\\n|\\r"));
-        Patch patch = DiffUtils.diff(rawLines, Arrays.asList(newXml.split("\\r?\\n|\\r")));
+        if (script == null && !expressions.isEmpty()) {
+            script = SedScript.compile(expressions);
+        }
 
-        List<String> diff = DiffUtils.generateUnifiedDiff("Original", "Transformed", rawLines, patch, 3);
-        return Util.join(diff, System.lineSeparator());
+        return script;
+    }
+
+    private synchronized @CheckForNull XmlTransformation transformation() {
+
+        if (transformation == null && (!xpaths.isEmpty() || !stylesheets.isEmpty())) {
+            transformation = XmlTransformation.compile(xpaths, stylesheets);
+        }
+
+        return transformation;
+    }
+
+    /*package*/ void describeTransformation(String rawXml, String newXml, PrintStream out) {
+
+        new UnifiedDiff("Original", "Transformed").write(rawXml, newXml, out);
+    }
+
+    /**
+     * Transfer entities the fetched configuration refers to before it is sent. Does nothing by default.
+     *
+     * @return Destinations to send the configuration to.
+     */
+    protected Iterator<ConfigDestination> transferContained(
+            ConfigDestination source,
+            CommandResponse.Accumulator xml,
+            Iterator<ConfigDestination> destinations,
+            CommandResponse response
+    ) {
+        return destinations;
     }
 
     /**
@@ -174,22 +933,86 @@ public abstract class TransferHandler implements Handler {
         return config;
     }
 
+    /**
+     * Streaming counterpart of {@link #fixupConfig(String, ConfigDestination)} used for big configurations.
+     *
+     * @return null if no transformation is needed.
+     */
+    protected @CheckForNull StreamingRewrite streamingFixup(ConfigDestination destination) {
+        return null;
+    }
+
     protected ConfigDestination source() {
-        if (entities == null || entities.size() < 2) throw new IllegalArgumentException(
-                "Expecting 2 or more positional arguments"
-        );
+        validateEntities();
         return urlParser().destination(entities.get(0));
     }
 
+    /**
+     * Destinations given as positional arguments.
+     */
     protected List<ConfigDestination> destinations() {
-        if (entities == null || entities.size() < 2) throw new IllegalArgumentException(
-                "Expecting 2 or more positional arguments"
-        );
-        return urlParser().pair(source(), entities.subList(1, entities.size()));
+        validateEntities();
+
+        final List<String> locators = new ArrayList<String>(entities.size() - 1);
+        for (final String entity: entities.subList(1, entities.size())) {
+            if (!entity.startsWith("@")) {
+                locators.add(entity);
+            }
+        }
+        return urlParser().pair(source(), locators);
+    }
+
+    /**
+     * Files to read more destinations from: <tt>@FILE</tt> arguments followed by --destinations-from options.
+     */
+    private List<String> manifests() {
+
+        final List<String> files = new ArrayList<String>();
+        if (entities != null && entities.size() > 1) {
+            for (final String entity: entities.subList(1, entities.size())) {
+                if (entity.startsWith("@")) {
+                    files.add(entity.substring(1));
+                }
+            }
+        }
+        files.addAll(manifests);
+        return files;
+    }
+
+    private void validateEntities() {
+        if (entities == null || entities.isEmpty() || (entities.size() < 2 && manifests.isEmpty())) {
+            throw new IllegalArgumentException("Expecting 2 or more positional arguments");
+        }
     }
 
     protected abstract UrlParser urlParser();
 
+    /**
+     * List names of all entities on the instance, one per line.
+     */
+    protected abstract CommandResponse.Accumulator listEntities(ConfigDestination instance);
+
+    /**
+     * Groovy statements writing configuration of entity <tt>name</tt> to OutputStream <tt>out</tt> on the instance.
+     *
+     * @return null if the configurations can not be fetched in bulk.
+     * @see ConfigTransfer#fetchAll
+     */
+    protected @CheckForNull String fetchLookup() {
+        return null;
+    }
+
+    /**
+     * Groovy statements writing configuration read from InputStream <tt>xml</tt> to entity <tt>name</tt> on the
+     * instance. Existing entity is to be overwritten if <tt>force</tt> is true, rejected otherwise.
+     *
+     * @return null if the configurations can not be sent in bulk.
+     * @see ConfigTransfer#sendAll
+     */
+    protected @CheckForNull String sendStatements() {
+        return null;
+    }
+
     protected abstract String getCommandName();
     protected abstract String updateCommandName();
     protected abstract String createCommandName();
@@ -38,7 +38,7 @@ public class Usage implements Handler {
     }
 
     public CommandResponse run(final CommandResponse response) {
-        response.out().println("Usage: ");
+        response.out().println("Usage: [--timings[=text|json:FILE]] COMMAND [OPTIONS]");
         for(Handler handler: main.commandMapping().values()) {
             final PrintStream o = response.out();
             o.println();
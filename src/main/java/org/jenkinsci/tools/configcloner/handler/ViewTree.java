@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.handler;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.CheckForNull;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Jobs and nested views referenced by view configuration.
+ *
+ * Nested views are serialized in the configuration of the view that contains them so a single fetch describes the
+ * whole tree.
+ */
+/*package*/ final class ViewTree {
+
+    private final String name;
+    private final Set<String> jobNames;
+    private final @CheckForNull Pattern includeRegex;
+    private final List<ViewTree> views;
+
+    private ViewTree(
+            final String name, final Set<String> jobNames, final Pattern includeRegex, final List<ViewTree> views
+    ) {
+        this.name = name;
+        this.jobNames = jobNames;
+        this.includeRegex = includeRegex;
+        this.views = views;
+    }
+
+    /*package*/ static ViewTree parse(final String xml) {
+
+        try {
+
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            return view(factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement());
+        } catch (ParserConfigurationException ex) {
+
+            throw new AssertionError(ex);
+        } catch (SAXException ex) {
+
+            throw new IllegalArgumentException("Configuration is not a valid XML", ex);
+        } catch (IOException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static ViewTree view(final Element view) {
+
+        final Element nameElement = child(view, "name");
+        final String name = nameElement == null ? "" : nameElement.getTextContent().trim();
+
+        final Set<String> jobNames = new LinkedHashSet<String>();
+        final Element jobs = child(view, "jobNames");
+        if (jobs != null) {
+            for (final Element job: children(jobs)) {
+                if ("string".equals(job.getTagName())) {
+                    jobNames.add(job.getTextContent().trim());
+                }
+            }
+        }
+
+        final Element regex = child(view, "includeRegex");
+        Pattern includeRegex = null;
+        if (regex != null) {
+            try {
+
+                includeRegex = Pattern.compile(regex.getTextContent());
+            } catch (PatternSyntaxException ex) {
+
+                throw new IllegalArgumentException("Invalid includeRegex of view " + name, ex);
+            }
+        }
+
+        final List<ViewTree> views = new ArrayList<ViewTree>();
+        final Element nested = child(view, "views");
+        if (nested != null) {
+            for (final Element child: children(nested)) {
+                views.add(view(child));
+            }
+        }
+
+        return new ViewTree(
+                name,
+                Collections.unmodifiableSet(jobNames),
+                includeRegex,
+                Collections.unmodifiableList(views)
+        );
+    }
+
+    private static @CheckForNull Element child(final Element parent, final String name) {
+
+        for (final Element child: children(parent)) {
+            if (name.equals(child.getTagName())) return child;
+        }
+        return null;
+    }
+
+    private static List<Element> children(final Element parent) {
+
+        final List<Element> children = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    /*package*/ String name() {
+        return name;
+    }
+
+    /*package*/ List<ViewTree> views() {
+        return views;
+    }
+
+    /**
+     * Whether the view or any nested one selects jobs by regular expression.
+     */
+    /*package*/ boolean usesRegex() {
+
+        if (includeRegex != null) return true;
+
+        for (final ViewTree view: views) {
+            if (view.usesRegex()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Jobs of this view and all nested views.
+     *
+     * @param existing Names of all jobs to match includeRegex against.
+     */
+    /*package*/ Set<String> allJobs(final Collection<String> existing) {
+
+        final Set<String> jobs = new LinkedHashSet<String>(jobs(existing));
+        for (final ViewTree view: views) {
+            jobs.addAll(view.allJobs(existing));
+        }
+        return jobs;
+    }
+
+    /**
+     * Jobs of this view, not including those of nested views.
+     *
+     * @param existing Names of all jobs to match includeRegex against.
+     */
+    /*package*/ Set<String> jobs(final Collection<String> existing) {
+
+        if (includeRegex == null) return jobNames;
+
+        final Set<String> jobs = new LinkedHashSet<String>(jobNames);
+        for (final String job: existing) {
+            if (includeRegex.matcher(job).matches()) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+}
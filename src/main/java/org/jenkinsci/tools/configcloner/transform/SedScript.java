@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.CheckForNull;
+
+import org.unix4j.Unix4j;
+import org.unix4j.builder.Unix4jCommandBuilder;
+
+/**
+ * Sed expressions compiled once and applied in a single pass over the document.
+ *
+ * Plain <tt>s/regexp/replacement/[g]</tt> substitutions are compiled into {@link Pattern}s and applied to each line
+ * in turn. Expressions this class does not understand, or replacements using escapes, group references or
+ * <tt>&amp;</tt>, are delegated to Unix4j sed so the behavior stays the same as before.
+ */
+public final class SedScript {
+
+    private final List<Stage> stages;
+
+    private SedScript(final List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    public static SedScript compile(final List<String> expressions) {
+
+        final List<Stage> stages = new ArrayList<Stage>();
+
+        List<Substitution> substitutions = null;
+        List<String> delegated = null;
+        for (final String expression: expressions) {
+
+            final Substitution substitution = Substitution.parse(expression);
+            if (substitution != null) {
+
+                if (delegated != null) {
+                    stages.add(new Unix4jStage(delegated));
+                    delegated = null;
+                }
+
+                if (substitutions == null) {
+                    substitutions = new ArrayList<Substitution>();
+                }
+                substitutions.add(substitution);
+            } else {
+
+                if (substitutions != null) {
+                    stages.add(new CompiledStage(substitutions));
+                    substitutions = null;
+                }
+
+                if (delegated == null) {
+                    delegated = new ArrayList<String>();
+                }
+                delegated.add(expression);
+            }
+        }
+
+        if (substitutions != null) {
+            stages.add(new CompiledStage(substitutions));
+        }
+
+        if (delegated != null) {
+            stages.add(new Unix4jStage(delegated));
+        }
+
+        return new SedScript(Collections.unmodifiableList(stages));
+    }
+
+    public String apply(String input) {
+
+        for (final Stage stage: stages) {
+
+            input = stage.apply(input);
+        }
+
+        return input;
+    }
+
+    private interface Stage {
+        String apply(String input);
+    }
+
+    /**
+     * Apply all substitutions to every line before moving to the next one.
+     *
+     * Lines are split and joined the way Unix4j does it: <tt>\n</tt>, <tt>\r</tt>, <tt>\r\n</tt> and
+     * <tt>\n\r</tt> terminate a line and are preserved, except for the terminator of the last line that is dropped.
+     */
+    private static final class CompiledStage implements Stage {
+
+        private final Substitution[] substitutions;
+
+        private CompiledStage(final List<Substitution> substitutions) {
+            this.substitutions = substitutions.toArray(new Substitution[substitutions.size()]);
+        }
+
+        public String apply(final String input) {
+
+            final int length = input.length();
+            final StringBuilder out = new StringBuilder(length + 16);
+
+            int start = 0;
+            while (start < length) {
+
+                int end = start;
+                while (end < length && !isTerminator(input.charAt(end))) {
+                    end++;
+                }
+
+                String line = input.substring(start, end);
+                for (final Substitution substitution: substitutions) {
+
+                    line = substitution.apply(line);
+                }
+                out.append(line);
+
+                if (end == length) break;
+
+                int next = end + 1;
+                if (next < length && isTerminator(input.charAt(next)) && input.charAt(next) != input.charAt(end)) {
+                    next++;
+                }
+
+                // Terminator of the last line is not preserved
+                if (next < length) {
+                    out.append(input, end, next);
+                }
+
+                start = next;
+            }
+
+            return out.toString();
+        }
+
+        private static boolean isTerminator(final char c) {
+
+            return c == '\n' || c == '\r';
+        }
+    }
+
+    private static final class Unix4jStage implements Stage {
+
+        private final List<String> expressions;
+
+        private Unix4jStage(final List<String> expressions) {
+            this.expressions = expressions;
+        }
+
+        public String apply(final String input) {
+
+            Unix4jCommandBuilder builder = Unix4j.fromString(input);
+            for (final String expr: expressions) {
+                builder = builder.sed(expr);
+            }
+
+            return builder.toStringResult();
+        }
+    }
+
+    private static final class Substitution {
+
+        private final Pattern pattern;
+        private final String replacement;
+        private final boolean global;
+
+        private Substitution(final Pattern pattern, final String replacement, final boolean global) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+            this.global = global;
+        }
+
+        /**
+         * @return null in case the expression is not a plain substitution.
+         */
+        private static @CheckForNull Substitution parse(final String expression) {
+
+            if (expression.length() < 4 || expression.charAt(0) != 's') return null;
+
+            final char delimiter = expression.charAt(1);
+            if (delimiter == '\\' || Character.isLetterOrDigit(delimiter) || Character.isWhitespace(delimiter)) {
+                return null;
+            }
+
+            final int regexpEnd = sectionEnd(expression, 2, delimiter);
+            if (regexpEnd == -1 || regexpEnd == 2) return null;
+
+            final int replacementEnd = sectionEnd(expression, regexpEnd + 1, delimiter);
+            if (replacementEnd == -1) return null;
+
+            final String replacement = expression.substring(regexpEnd + 1, replacementEnd);
+            // Leave escapes and references to sed
+            if (replacement.indexOf('\\') != -1 || replacement.indexOf('$') != -1 || replacement.indexOf('&') != -1) {
+                return null;
+            }
+
+            final String flags = expression.substring(replacementEnd + 1);
+            if (!flags.isEmpty() && !flags.equals("g")) return null;
+
+            try {
+
+                final Pattern pattern = Pattern.compile(expression.substring(2, regexpEnd));
+                return new Substitution(pattern, replacement, !flags.isEmpty());
+            } catch (PatternSyntaxException ex) {
+
+                return null;
+            }
+        }
+
+        /**
+         * Find position of unescaped delimiter.
+         */
+        private static int sectionEnd(final String expression, final int start, final char delimiter) {
+
+            for (int i = start; i < expression.length(); i++) {
+
+                final char c = expression.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == delimiter) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private String apply(final String line) {
+
+            final Matcher matcher = pattern.matcher(line);
+            if (!matcher.find()) return line;
+
+            final StringBuilder out = new StringBuilder(line.length() + replacement.length());
+            int last = 0;
+            do {
+
+                out.append(line, last, matcher.start()).append(replacement);
+                last = matcher.end();
+            } while (global && matcher.find());
+
+            return out.append(line, last, line.length()).toString();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.transform;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.CheckForNull;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Element level rewrite of XML document performed while it is being streamed.
+ *
+ * Only the elements being processed are held in memory so the transformation does not grow with document size.
+ */
+public final class StreamingRewrite {
+
+    private static final int PIPE_BUFFER = 64 * 1024;
+
+    private static final XMLInputFactory INPUT = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newInstance();
+
+    static {
+        INPUT.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final List<TextReplacement> replacements = new ArrayList<TextReplacement>();
+
+    /**
+     * Replace content of elements on path.
+     *
+     * @param path Slash separated element names starting from document element. <tt>*</tt> matches any element.
+     */
+    public StreamingRewrite replaceText(final String path, final String text) {
+
+        replacements.add(new TextReplacement(path, text));
+        return this;
+    }
+
+    /**
+     * Write rewritten document to out.
+     */
+    public void apply(final InputStream in, final OutputStream out) throws IOException {
+
+        try {
+
+            final XMLEventReader reader = INPUT.createXMLEventReader(in);
+            final XMLEventWriter writer = OUTPUT.createXMLEventWriter(out, "UTF-8");
+
+            final Deque<String> path = new ArrayDeque<String>();
+            int skipped = 0; // Depth inside of element whose content was replaced
+            while (reader.hasNext()) {
+
+                final XMLEvent event = reader.nextEvent();
+
+                if (skipped > 0) {
+
+                    if (event.isStartElement()) {
+                        skipped++;
+                    } else if (event.isEndElement()) {
+                        skipped--;
+                    }
+
+                    if (skipped > 0) continue;
+                }
+
+                if (event.isStartDocument()) {
+
+                    writer.add(EVENTS.createStartDocument("UTF-8", ((StartDocument) event).getVersion()));
+                    writer.add(EVENTS.createCharacters("\n"));
+                } else if (event.isStartElement()) {
+
+                    path.addLast(event.asStartElement().getName().getLocalPart());
+                    writer.add(event);
+
+                    final String text = replacement(path);
+                    if (text != null) {
+
+                        writer.add(EVENTS.createCharacters(text));
+                        skipped = 1;
+                    }
+                } else {
+
+                    if (event.isEndElement()) {
+                        path.removeLast();
+                    }
+                    writer.add(event);
+                }
+            }
+
+            writer.flush();
+            writer.close();
+            reader.close();
+        } catch (XMLStreamException ex) {
+
+            throw new IOException("Unable to rewrite XML", ex);
+        }
+    }
+
+    /**
+     * Rewrite the document in background thread providing the result as a stream.
+     *
+     * The source stream is closed once the document is rewritten. Close the result when done, even if it was not read
+     * to the end, so the background thread terminates.
+     */
+    public InputStream pipe(final InputStream in) {
+
+        final PipedInputStream result = new PipedInputStream(PIPE_BUFFER);
+        final PipedOutputStream sink;
+        try {
+
+            sink = new PipedOutputStream(result);
+        } catch (IOException ex) {
+
+            throw new AssertionError(ex);
+        }
+
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        final Thread writer = new Thread("streaming-rewrite") {
+            @Override
+            public void run() {
+
+                try {
+
+                    apply(in, sink);
+                } catch (IOException ex) {
+
+                    failure.set(ex);
+                } finally {
+
+                    try {
+
+                        sink.close();
+                    } catch (IOException ex) {
+
+                        // Reader gave up
+                    }
+
+                    try {
+
+                        in.close();
+                    } catch (IOException ex) {
+
+                        // Nothing more to read
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+
+        return new FilterInputStream(result) {
+            @Override
+            public int read() throws IOException {
+
+                return checked(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+
+                return checked(super.read(b, off, len));
+            }
+
+            /**
+             * Report failure instead of end of stream so truncated document is never mistaken for complete one.
+             */
+            private int checked(final int read) throws IOException {
+
+                final IOException ex = failure.get();
+                if (read == -1 && ex != null) throw ex;
+
+                return read;
+            }
+        };
+    }
+
+    private @CheckForNull String replacement(final Deque<String> path) {
+
+        for (final TextReplacement replacement: replacements) {
+
+            if (replacement.matches(path)) return replacement.text;
+        }
+
+        return null;
+    }
+
+    private static final class TextReplacement {
+
+        private final String[] path;
+        private final String text;
+
+        private TextReplacement(final String path, final String text) {
+
+            final String trimmed = path.startsWith("/") ? path.substring(1) : path;
+            this.path = trimmed.split("/");
+            this.text = text;
+        }
+
+        private boolean matches(final Deque<String> actual) {
+
+            if (actual.size() != path.length) return false;
+
+            final Iterator<String> names = actual.iterator();
+            for (final String expected: path) {
+
+                final String name = names.next();
+                if (!expected.equals("*") && !expected.equals(name)) return false;
+            }
+
+            return true;
+        }
+    }
+}
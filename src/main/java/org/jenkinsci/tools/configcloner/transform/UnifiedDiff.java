@@ -0,0 +1,429 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.transform;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Unified diff of two documents written directly to the output.
+ *
+ * Lines are addressed by offsets into the original strings so documents are never copied. Differences are found by
+ * linear space variant of Myers algorithm on the part that remains after common prefix and suffix is stripped. When
+ * the documents differ too much to compute the diff in reasonable time, only a summary is written.
+ */
+public final class UnifiedDiff {
+
+    public static final int DEFAULT_CONTEXT = 3;
+
+    /**
+     * Number of diagonals to examine before giving up.
+     */
+    public static final long DEFAULT_WORK_LIMIT = 50000000L;
+
+    private final String originalName;
+    private final String revisedName;
+    private final int context;
+    private final long workLimit;
+
+    public UnifiedDiff(final String originalName, final String revisedName) {
+        this(originalName, revisedName, DEFAULT_CONTEXT, DEFAULT_WORK_LIMIT);
+    }
+
+    /*package*/ UnifiedDiff(final String originalName, final String revisedName, final int context, final long workLimit) {
+        this.originalName = originalName;
+        this.revisedName = revisedName;
+        this.context = context;
+        this.workLimit = workLimit;
+    }
+
+    /**
+     * Write differences between documents to out.
+     *
+     * @return true if documents differ.
+     */
+    public boolean write(final String original, final String revised, final PrintStream out) {
+
+        final Lines a = new Lines(original);
+        final Lines b = new Lines(revised);
+
+        final Comparison comparison = new Comparison(a, b, workLimit);
+        try {
+
+            comparison.compare(0, a.count, 0, b.count);
+        } catch (TooComplex ex) {
+
+            out.println("--- " + originalName);
+            out.println("+++ " + revisedName);
+            out.printf(
+                    "Too many differences to show: lines %d-%d of %d original lines replaced by lines %d-%d of %d%n",
+                    ex.aLo + 1, ex.aHi, a.count, ex.bLo + 1, ex.bHi, b.count
+            );
+            return true;
+        }
+
+        return new Printer(a, b, comparison.deleted, comparison.inserted, out).print();
+    }
+
+    /**
+     * Document split to lines without copying. Line terminators are not part of the line.
+     */
+    private static final class Lines {
+
+        private final String text;
+        private int count = 0;
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int[] hashes = new int[64];
+
+        private Lines(final String text) {
+
+            this.text = text;
+
+            final int length = text.length();
+            int start = 0;
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+
+                final char c = text.charAt(i);
+                if (c == '\n' || c == '\r') {
+
+                    add(start, i, hash);
+                    if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                    hash = 0;
+                } else {
+
+                    hash = 31 * hash + c;
+                }
+            }
+
+            if (start < length || count == 0) {
+                add(start, length, hash);
+            }
+        }
+
+        private void add(final int start, final int end, final int hash) {
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+
+            starts[count] = start;
+            ends[count] = end;
+            hashes[count] = hash;
+            count++;
+        }
+
+        private boolean equal(final int line, final Lines other, final int otherLine) {
+
+            final int length = ends[line] - starts[line];
+            return hashes[line] == other.hashes[otherLine]
+                    && length == other.ends[otherLine] - other.starts[otherLine]
+                    && text.regionMatches(starts[line], other.text, other.starts[otherLine], length)
+            ;
+        }
+
+        private void print(final PrintStream out, final char prefix, final int line) {
+
+            out.append(prefix).append(text, starts[line], ends[line]).println();
+        }
+    }
+
+    private static final class TooComplex extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int aLo, aHi, bLo, bHi;
+
+        private TooComplex(final int aLo, final int aHi, final int bLo, final int bHi) {
+            super(null, null, false, false);
+            this.aLo = aLo;
+            this.aHi = aHi;
+            this.bLo = bLo;
+            this.bHi = bHi;
+        }
+    }
+
+    /**
+     * Mark lines deleted from a and inserted to b.
+     */
+    private static final class Comparison {
+
+        private final Lines a;
+        private final Lines b;
+        private final BitSet deleted = new BitSet();
+        private final BitSet inserted = new BitSet();
+
+        private final int[] forward;
+        private final int[] backward;
+
+        private long work;
+        private boolean bisected = false;
+        private int outerALo, outerAHi, outerBLo, outerBHi;
+
+        private Comparison(final Lines a, final Lines b, final long workLimit) {
+
+            this.a = a;
+            this.b = b;
+            this.work = workLimit;
+
+            final int size = a.count + b.count + 3;
+            forward = new int[size];
+            backward = new int[size];
+        }
+
+        private void compare(int aLo, int aHi, int bLo, int bHi) {
+
+            while (aLo < aHi && bLo < bHi && a.equal(aLo, b, bLo)) {
+                aLo++;
+                bLo++;
+            }
+
+            while (aLo < aHi && bLo < bHi && a.equal(aHi - 1, b, bHi - 1)) {
+                aHi--;
+                bHi--;
+            }
+
+            if (aLo == aHi) {
+                inserted.set(bLo, bHi);
+                return;
+            }
+
+            if (bLo == bHi) {
+                deleted.set(aLo, aHi);
+                return;
+            }
+
+            if (!bisected) {
+                // Region that differs, reported in summary
+                bisected = true;
+                outerALo = aLo;
+                outerAHi = aHi;
+                outerBLo = bLo;
+                outerBHi = bHi;
+            }
+
+            bisect(aLo, aHi, bLo, bHi);
+        }
+
+        /**
+         * Find the middle snake and recurse on both halves.
+         */
+        private void bisect(final int aLo, final int aHi, final int bLo, final int bHi) {
+
+            final int n = aHi - aLo;
+            final int m = bHi - bLo;
+            final int maxD = (n + m + 1) / 2;
+            final int offset = maxD;
+            final int length = 2 * maxD + 2;
+
+            Arrays.fill(forward, 0, length, -1);
+            Arrays.fill(backward, 0, length, -1);
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+
+            final int delta = n - m;
+            final boolean front = (delta & 1) != 0;
+
+            int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+            for (int d = 0; d < maxD; d++) {
+
+                work -= 2 * d + 2;
+                if (work < 0) throw new TooComplex(outerALo, outerAHi, outerBLo, outerBHi);
+
+                for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+
+                    final int k1Offset = offset + k1;
+                    int x1 = k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])
+                            ? forward[k1Offset + 1]
+                            : forward[k1Offset - 1] + 1
+                    ;
+                    int y1 = x1 - k1;
+                    while (x1 < n && y1 < m && a.equal(aLo + x1, b, bLo + y1)) {
+                        x1++;
+                        y1++;
+                    }
+                    forward[k1Offset] = x1;
+
+                    if (x1 > n) {
+                        k1end += 2;
+                    } else if (y1 > m) {
+                        k1start += 2;
+                    } else if (front) {
+
+                        final int k2Offset = offset + delta - k1;
+                        if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1) {
+                            if (x1 >= n - backward[k2Offset]) {
+                                split(aLo, aHi, bLo, bHi, x1, y1);
+                                return;
+                            }
+                        }
+                    }
+                }
+
+                for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+
+                    final int k2Offset = offset + k2;
+                    int x2 = k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])
+                            ? backward[k2Offset + 1]
+                            : backward[k2Offset - 1] + 1
+                    ;
+                    int y2 = x2 - k2;
+                    while (x2 < n && y2 < m && a.equal(aHi - x2 - 1, b, bHi - y2 - 1)) {
+                        x2++;
+                        y2++;
+                    }
+                    backward[k2Offset] = x2;
+
+                    if (x2 > n) {
+                        k2end += 2;
+                    } else if (y2 > m) {
+                        k2start += 2;
+                    } else if (!front) {
+
+                        final int k1Offset = offset + delta - k2;
+                        if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+                            final int x1 = forward[k1Offset];
+                            final int y1 = offset + x1 - k1Offset;
+                            if (x1 >= n - x2) {
+                                split(aLo, aHi, bLo, bHi, x1, y1);
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Nothing in common
+            deleted.set(aLo, aHi);
+            inserted.set(bLo, bHi);
+        }
+
+        private void split(final int aLo, final int aHi, final int bLo, final int bHi, final int x, final int y) {
+
+            compare(aLo, aLo + x, bLo, bLo + y);
+            compare(aLo + x, aHi, bLo + y, bHi);
+        }
+    }
+
+    /**
+     * Group changes into hunks with context and print them as they are found.
+     */
+    private final class Printer {
+
+        private final Lines a;
+        private final Lines b;
+        private final BitSet deleted;
+        private final BitSet inserted;
+        private final PrintStream out;
+
+        private Printer(final Lines a, final Lines b, final BitSet deleted, final BitSet inserted, final PrintStream out) {
+            this.a = a;
+            this.b = b;
+            this.deleted = deleted;
+            this.inserted = inserted;
+            this.out = out;
+        }
+
+        private boolean print() {
+
+            if (deleted.isEmpty() && inserted.isEmpty()) return false;
+
+            out.println("--- " + originalName);
+            out.println("+++ " + revisedName);
+
+            // Hunk in progress: first and past-the-last changed lines
+            int hunkA0 = -1, hunkB0 = -1, hunkA1 = -1, hunkB1 = -1;
+
+            int i = 0, j = 0;
+            while (true) {
+
+                while (i < a.count && j < b.count && !deleted.get(i) && !inserted.get(j)) {
+                    i++;
+                    j++;
+                }
+
+                if (i >= a.count && j >= b.count) break;
+
+                final int i0 = i, j0 = j;
+                while (i < a.count && deleted.get(i)) i++;
+                while (j < b.count && inserted.get(j)) j++;
+
+                if (hunkA0 == -1) {
+                    hunkA0 = i0;
+                    hunkB0 = j0;
+                } else if (i0 - hunkA1 > 2 * context) {
+                    hunk(hunkA0, hunkA1, hunkB0, hunkB1);
+                    hunkA0 = i0;
+                    hunkB0 = j0;
+                }
+                hunkA1 = i;
+                hunkB1 = j;
+            }
+
+            hunk(hunkA0, hunkA1, hunkB0, hunkB1);
+            return true;
+        }
+
+        private void hunk(final int a0, final int a1, final int b0, final int b1) {
+
+            final int lead = Math.min(context, a0);
+            final int trail = Math.min(context, a.count - a1);
+
+            final int aStart = a0 - lead;
+            final int aEnd = a1 + trail;
+            final int bStart = b0 - lead;
+            final int bEnd = b1 + trail;
+
+            out.printf("@@ -%s +%s @@%n", range(aStart, aEnd), range(bStart, bEnd));
+
+            int i = aStart, j = bStart;
+            while (i < aEnd || j < bEnd) {
+
+                if (i < aEnd && deleted.get(i)) {
+                    a.print(out, '-', i++);
+                } else if (j < bEnd && inserted.get(j)) {
+                    b.print(out, '+', j++);
+                } else {
+                    a.print(out, ' ', i++);
+                    j++;
+                }
+            }
+        }
+
+        private String range(final int start, final int end) {
+
+            final int length = end - start;
+            if (length == 0) return start + ",0";
+            if (length == 1) return String.valueOf(start + 1);
+            return (start + 1) + "," + length;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2014 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.tools.configcloner.transform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Structural transformation of XML document using XPath assignments and XSLT stylesheets.
+ *
+ * Expressions and stylesheets are compiled by every {@link #compile(List, List)} call so edited stylesheets are picked
+ * up by the next run of a long-running process. Compile once per run and reuse the instance for all its documents.
+ */
+public final class XmlTransformation {
+
+    private final List<Assignment> assignments;
+    private final List<Templates> stylesheets;
+
+    private XmlTransformation(final List<Assignment> assignments, final List<Templates> stylesheets) {
+        this.assignments = assignments;
+        this.stylesheets = stylesheets;
+    }
+
+    /**
+     * @param assignments <tt>XPATH=VALUE</tt> pairs setting text of all matching nodes to VALUE.
+     * @param stylesheets Paths to XSLT stylesheets.
+     */
+    public static XmlTransformation compile(final List<String> assignments, final List<String> stylesheets) {
+
+        final List<Assignment> compiledAssignments = new ArrayList<Assignment>(assignments.size());
+        for (final String assignment: assignments) {
+
+            compiledAssignments.add(Assignment.parse(assignment));
+        }
+
+        final List<Templates> compiledStylesheets = new ArrayList<Templates>(stylesheets.size());
+        for (final String stylesheet: stylesheets) {
+
+            compiledStylesheets.add(stylesheet(stylesheet));
+        }
+
+        return new XmlTransformation(
+                Collections.unmodifiableList(compiledAssignments),
+                Collections.unmodifiableList(compiledStylesheets)
+        );
+    }
+
+    public String apply(final String xml) {
+
+        try {
+
+            Document document = parse(xml);
+            final String version = document.getXmlVersion();
+
+            for (final Assignment assignment: assignments) {
+
+                assignment.apply(document);
+            }
+
+            for (final Templates stylesheet: stylesheets) {
+
+                final DOMResult result = new DOMResult();
+                stylesheet.newTransformer().transform(new DOMSource(document), result);
+                document = (Document) result.getNode();
+            }
+
+            return serialize(document, version);
+        } catch (TransformerException ex) {
+
+            throw new IllegalArgumentException("Unable to transform configuration", ex);
+        } catch (XPathExpressionException ex) {
+
+            throw new IllegalArgumentException("Unable to transform configuration", ex);
+        }
+    }
+
+    private static Document parse(final String xml) {
+
+        try {
+
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        } catch (ParserConfigurationException ex) {
+
+            throw new AssertionError(ex);
+        } catch (SAXException ex) {
+
+            throw new IllegalArgumentException("Configuration is not a valid XML", ex);
+        } catch (IOException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static String serialize(final Document document, final String version) throws TransformerException {
+
+        final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.setOutputProperty(OutputKeys.VERSION, version);
+
+        final StringWriter writer = new StringWriter();
+        transformer.transform(new DOMSource(document), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    private static Templates stylesheet(final String path) {
+
+        try {
+
+            final Source source = new StreamSource(new File(path).getAbsoluteFile());
+            return TransformerFactory.newInstance().newTemplates(source);
+        } catch (TransformerConfigurationException ex) {
+
+            throw new IllegalArgumentException("Invalid stylesheet " + path, ex);
+        }
+    }
+
+    private static XPathExpression xpath(final String expression) {
+
+        try {
+
+            return XPathFactory.newInstance().newXPath().compile(expression);
+        } catch (XPathExpressionException ex) {
+
+            throw new IllegalArgumentException("Invalid XPath expression " + expression, ex);
+        }
+    }
+
+    private static final class Assignment {
+
+        private final XPathExpression xpath;
+        private final String value;
+
+        private Assignment(final XPathExpression xpath, final String value) {
+            this.xpath = xpath;
+            this.value = value;
+        }
+
+        private static Assignment parse(final String assignment) {
+
+            final int separator = separator(assignment);
+            if (separator == -1) throw new IllegalArgumentException(
+                    "Expecting XPATH=VALUE, got " + assignment
+            );
+
+            return new Assignment(
+                    xpath(assignment.substring(0, separator)),
+                    assignment.substring(separator + 1)
+            );
+        }
+
+        /**
+         * First '=' that is not part of a predicate or a literal so the value can contain any character.
+         */
+        private static int separator(final String assignment) {
+
+            int depth = 0;
+            char quote = 0;
+            for (int i = 0; i < assignment.length(); i++) {
+
+                final char c = assignment.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '[' || c == '(') {
+                    depth++;
+                } else if (c == ']' || c == ')') {
+                    depth--;
+                } else if (c == '=' && depth == 0) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private void apply(final Document document) throws XPathExpressionException {
+
+            final NodeList nodes;
+            // Compiled expressions are shared by threads of a run and not thread safe
+            synchronized (xpath) {
+
+                nodes = (NodeList) xpath.evaluate(document, XPathConstants.NODESET);
+            }
+
+            for (int i = 0; i < nodes.getLength(); i++) {
+
+                final Node node = nodes.item(i);
+                if (node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.ATTRIBUTE_NODE) {
+
+                    node.setTextContent(value);
+                } else {
+
+                    node.setNodeValue(value);
+                }
+            }
+        }
+    }
+}
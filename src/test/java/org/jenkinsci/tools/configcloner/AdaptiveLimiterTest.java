@@ -0,0 +1,217 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AdaptiveLimiterTest {
+
+    private final JenkinsInstance fast = JenkinsInstance.parse("http://fast.com/");
+    private final JenkinsInstance slow = JenkinsInstance.parse("http://slow.com/");
+
+    private final Fake fake = new Fake();
+    private final ExecutorService clients = Executors.newFixedThreadPool(16);
+
+    @After
+    public void tearDown() {
+
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void growWhileInstanceKeepsUp() throws Exception {
+
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(fake, 64, 8);
+        assertEquals(AdaptiveLimiter.INITIAL_LIMIT, limiter.limit(fast), 0);
+
+        run(limiter, fast, 400);
+
+        assertEquals(8, limiter.limit(fast), 0);
+        assertEquals(8, fake.maxInFlight(fast));
+    }
+
+    @Test
+    public void halveOnFailure() throws Exception {
+
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(fake, 64, 8);
+        run(limiter, fast, 400);
+        assertEquals(8, limiter.limit(fast), 0);
+
+        fake.failing = true;
+        execute(limiter, fast);
+        assertEquals(4, limiter.limit(fast), 0);
+
+        for (int i = 0; i < 5; i++) {
+            execute(limiter, fast);
+        }
+        assertEquals(1, limiter.limit(fast), 0);
+    }
+
+    @Test
+    public void halveWhenOverloaded() throws Exception {
+
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(fake, 64, 8);
+        run(limiter, fast, 400);
+        assertEquals(8, limiter.limit(fast), 0);
+
+        fake.code = Transport.OVERLOADED;
+        assertEquals(Transport.OVERLOADED, execute(limiter, fast));
+        assertEquals(4, limiter.limit(fast), 0);
+    }
+
+    @Test
+    public void throttleSlowInstanceOnly() throws Exception {
+
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(fake, 64, 8);
+        run(limiter, fast, 400);
+        run(limiter, slow, 400);
+
+        fake.latency.put(slow, 50L);
+        run(limiter, slow, 8);
+        run(limiter, fast, 8);
+
+        assertEquals(4, limiter.limit(slow), 0);
+        assertEquals(8, limiter.limit(fast), 0);
+    }
+
+    @Test
+    public void respectGlobalLimit() throws Exception {
+
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(fake, 3, 8);
+
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        tasks.addAll(tasks(limiter, fast, 200));
+        tasks.addAll(tasks(limiter, slow, 200));
+        invoke(tasks);
+
+        assertEquals(3, fake.maxTotal.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidLimit() {
+
+        new AdaptiveLimiter(fake, 64, 0);
+    }
+
+    private void run(final AdaptiveLimiter limiter, final JenkinsInstance instance, final int commands) throws Exception {
+
+        invoke(tasks(limiter, instance, commands));
+    }
+
+    private List<Callable<Integer>> tasks(final AdaptiveLimiter limiter, final JenkinsInstance instance, final int commands) {
+
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < commands; i++) {
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+
+                    return execute(limiter, instance);
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private void invoke(final List<Callable<Integer>> tasks) throws Exception {
+
+        for (final Future<Integer> result: clients.invokeAll(tasks, 60, TimeUnit.SECONDS)) {
+            assertEquals(0, (int) result.get());
+        }
+    }
+
+    private int execute(final AdaptiveLimiter limiter, final JenkinsInstance instance) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        final InputStream in = new ByteArrayInputStream(new byte[0]);
+        try {
+
+            return limiter.execute(instance, Arrays.asList("get-job", "job"), in, rsp.out(), rsp.err());
+        } catch (HandlerException ex) {
+
+            if (!fake.failing) fail(ex.getMessage());
+            return 1;
+        }
+    }
+
+    private static final class Fake implements Transport {
+
+        private final Map<JenkinsInstance, Long> latency = new ConcurrentHashMap<JenkinsInstance, Long>();
+        private final Map<JenkinsInstance, AtomicInteger> maxInFlight = new ConcurrentHashMap<JenkinsInstance, AtomicInteger>();
+        private final Map<JenkinsInstance, AtomicInteger> inFlight = new ConcurrentHashMap<JenkinsInstance, AtomicInteger>();
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger maxTotal = new AtomicInteger();
+        private volatile boolean failing = false;
+        private volatile int code = 0;
+
+        public int execute(
+                final JenkinsInstance instance,
+                final List<String> command,
+                final InputStream stdin,
+                final OutputStream out,
+                final OutputStream err
+        ) {
+
+            if (failing) throw new HandlerException(new ConnectException("Connection refused"));
+
+            final AtomicInteger current = counter(inFlight, instance);
+            record(counter(maxInFlight, instance), current.incrementAndGet());
+            record(maxTotal, total.incrementAndGet());
+            try {
+
+                final Long millis = latency.get(instance);
+                Thread.sleep(millis == null ? 10 : millis);
+                return code;
+            } catch (InterruptedException ex) {
+
+                throw new HandlerException(ex);
+            } finally {
+
+                current.decrementAndGet();
+                total.decrementAndGet();
+            }
+        }
+
+        public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {}
+
+        private int maxInFlight(final JenkinsInstance instance) {
+
+            return counter(maxInFlight, instance).get();
+        }
+
+        private static AtomicInteger counter(final Map<JenkinsInstance, AtomicInteger> counters, final JenkinsInstance instance) {
+
+            synchronized (counters) {
+                if (!counters.containsKey(instance)) {
+                    counters.put(instance, new AtomicInteger());
+                }
+                return counters.get(instance);
+            }
+        }
+
+        private static void record(final AtomicInteger max, final int current) {
+
+            synchronized (max) {
+                max.set(Math.max(max.get(), current));
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import hudson.cli.CLI;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CLIPoolTest {
+
+    private final JenkinsInstance first = JenkinsInstance.parse("http://first.com/");
+    private final JenkinsInstance second = JenkinsInstance.parse("http://second.com/");
+
+    private CLIFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+
+        factory = Mockito.mock(CLIFactory.class);
+        Mockito.when(factory.create(Mockito.any(URL.class))).thenAnswer(new Answer<CLI>() {
+            public CLI answer(InvocationOnMock invocation) {
+                return Mockito.mock(CLI.class);
+            }
+        });
+    }
+
+    @Test
+    public void reuseReturnedConnection() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 4);
+
+        final CLI connection = pool.checkout(first);
+        pool.release(first, connection);
+
+        assertSame(connection, pool.checkout(first));
+        Mockito.verify(factory).create(Mockito.any(URL.class));
+    }
+
+    @Test
+    public void replaceDiscardedConnection() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 1);
+
+        final CLI connection = pool.checkout(first);
+        pool.discard(first, connection);
+
+        Mockito.verify(connection).close();
+        assertNotSame(connection, pool.checkout(first));
+        Mockito.verify(factory, Mockito.times(2)).create(Mockito.any(URL.class));
+    }
+
+    @Test
+    public void openNewConnectionWhenAllAreCheckedOut() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 4);
+
+        assertNotSame(pool.checkout(first), pool.checkout(first));
+        Mockito.verify(factory, Mockito.times(2)).create(Mockito.any(URL.class));
+    }
+
+    @Test
+    public void openMinimalNumberOfConnectionsEagerly() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 3, 4);
+
+        pool.checkout(first);
+        Mockito.verify(factory, Mockito.times(3)).create(Mockito.any(URL.class));
+    }
+
+    @Test
+    public void waitForConnectionWhenMaximumIsCheckedOut() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 1);
+
+        final CLI connection = pool.checkout(first);
+        final AtomicReference<CLI> borrowed = new AtomicReference<CLI>();
+        final Thread waiting = new Thread() {
+            @Override public void run() {
+                borrowed.set(pool.checkout(first));
+            }
+        };
+        waiting.start();
+
+        waiting.join(200);
+        assertNull(borrowed.get());
+
+        // Other instances are not blocked
+        pool.release(second, pool.checkout(second));
+
+        pool.release(first, connection);
+        waiting.join();
+        assertSame(connection, borrowed.get());
+    }
+
+    @Test
+    public void warmUpConnectsAllInstances() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 4);
+        final JenkinsInstance local = JenkinsInstance.parse("http://localhost:8080/");
+        final JenkinsInstance loopback = JenkinsInstance.parse("http://127.0.0.1:8080/");
+
+        pool.warmUp(Arrays.asList(local, loopback, local), 10, TimeUnit.SECONDS);
+
+        Mockito.verify(factory, Mockito.times(2)).create(Mockito.any(URL.class));
+    }
+
+    @Test
+    public void warmUpReportsUnreachableInstances() throws Exception {
+
+        Mockito.when(factory.create(Mockito.any(URL.class))).thenThrow(new IOException("Connection refused"));
+        final CLIPool pool = new CLIPool(factory, 1, 4);
+
+        try {
+            pool.warmUp(Arrays.asList(JenkinsInstance.parse("http://localhost:8080/")), 10, TimeUnit.SECONDS);
+            fail();
+        } catch (HandlerException ex) {
+            assertThat(ex.getMessage(), containsString("Connection refused"));
+        }
+    }
+
+    @Test
+    public void closeAllConnections() throws Exception {
+
+        final CLIPool pool = new CLIPool(factory, 1, 4);
+
+        final CLI checkedOut = pool.checkout(first);
+        final CLI returned = pool.checkout(second);
+        pool.release(second, returned);
+
+        pool.close();
+
+        Mockito.verify(checkedOut).close();
+        Mockito.verify(returned).close();
+    }
+}
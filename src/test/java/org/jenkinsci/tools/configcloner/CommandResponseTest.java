@@ -0,0 +1,142 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.jenkinsci.tools.configcloner.CommandResponse.Accumulator;
+import org.junit.Test;
+
+public class CommandResponseTest {
+
+    @Test
+    public void keepSmallOutputInMemory() throws IOException {
+
+        final Accumulator rsp = CommandResponse.accumulate(1024);
+        rsp.out().print("line1\nline2\n");
+        rsp.err().print("error");
+
+        assertThat(rsp.stdout(), equalTo("line1\nline2\n"));
+        assertThat(rsp.stdout("> %s"), equalTo("> line1\n> line2\n"));
+        assertThat(rsp.stderr(), equalTo("error"));
+        assertThat(read(rsp.stdoutStream()), equalTo("line1\nline2\n"));
+        assertEquals(12, rsp.stdoutSize());
+    }
+
+    @Test
+    public void spillBigOutput() throws IOException {
+
+        final Accumulator rsp = CommandResponse.accumulate(16);
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            final String line = "Line number " + i + " \u017elu\u0165ou\u010dk\u00fd\n";
+            final byte[] bytes = line.getBytes("UTF-8");
+            rsp.out().write(bytes, 0, bytes.length);
+            expected.append(line);
+        }
+
+        assertThat(rsp.stdout(), equalTo(expected.toString()));
+        assertThat(read(rsp.stdoutStream()), equalTo(expected.toString()));
+        assertEquals(expected.toString().getBytes("UTF-8").length, rsp.stdoutSize());
+
+        // Appending after the content was read
+        rsp.out().print("tail");
+        expected.append("tail");
+        assertThat(rsp.stdout(), equalTo(expected.toString()));
+
+        rsp.close();
+    }
+
+    @Test
+    public void discardOnClose() {
+
+        final Accumulator rsp = CommandResponse.accumulate(4);
+        rsp.out().print("Some output");
+        rsp.err().print("Some error");
+
+        rsp.close();
+
+        assertThat(rsp.stdout(), equalTo(""));
+        assertThat(rsp.stderr(), equalTo(""));
+    }
+
+    @Test
+    public void mergeSpilledOutput() {
+
+        final Accumulator rsp = CommandResponse.accumulate(4);
+        rsp.out().print("Some output");
+        rsp.err().print("Some error");
+        rsp.returnCode(42);
+
+        final Accumulator parent = CommandResponse.accumulate();
+        parent.merge(rsp);
+
+        assertThat(parent.stdout(), equalTo("Some output"));
+        assertThat(parent.stderr(), equalTo("Some error"));
+        assertEquals(42, parent.returnCode());
+    }
+
+    @Test
+    public void cacheDecodedOutput() {
+
+        final Accumulator rsp = CommandResponse.accumulate();
+        rsp.out().print("Some output");
+
+        final String decoded = rsp.stdout();
+        assertSame(decoded, rsp.stdout());
+
+        rsp.out().print(" and more");
+        assertNotSame(decoded, rsp.stdout());
+        assertThat(rsp.stdout(), equalTo("Some output and more"));
+    }
+
+    @Test
+    public void exposeBytes() throws IOException {
+
+        for (final int threshold: new int[] {4, 1024}) {
+
+            final Accumulator rsp = CommandResponse.accumulate(threshold);
+            final byte[] expected = "\u017elu\u0165ou\u010dk\u00fd".getBytes("UTF-8");
+            rsp.err().write(expected, 0, expected.length);
+
+            final ByteBuffer bytes = rsp.stderrBytes();
+            assertTrue(bytes.isReadOnly());
+            assertEquals(ByteBuffer.wrap(expected), bytes);
+            assertEquals(0, rsp.stdoutBytes().remaining());
+
+            rsp.close();
+        }
+    }
+
+    @Test
+    public void mergeBytes() throws IOException {
+
+        final byte[] expected = "\u017elu\u0165ou\u010dk\u00fd".getBytes("UTF-8");
+        final Accumulator rsp = CommandResponse.accumulate(4);
+        rsp.out().write(expected, 0, expected.length);
+
+        final Accumulator parent = CommandResponse.accumulate();
+        parent.merge(rsp);
+
+        assertEquals(ByteBuffer.wrap(expected), parent.stdoutBytes());
+    }
+
+    private String read(final InputStream stream) throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[7];
+        int read;
+        while ((read = stream.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toString("UTF-8");
+    }
+}
@@ -0,0 +1,191 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import hudson.cli.CLI;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ConfigTransferTest {
+
+    private final ConfigDestination destination = new ConfigDestination("http://dst.com", "dst");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private CLIPool pool;
+    private CLI cli;
+
+    @Before
+    public void setUp() {
+
+        cli = Mockito.mock(CLI.class);
+        pool = Mockito.mock(CLIPool.class);
+        Mockito.when(pool.checkout(destination.instance())).thenReturn(cli);
+        Mockito.when(cli.execute(
+                Mockito.anyListOf(String.class),
+                Mockito.any(InputStream.class),
+                Mockito.any(OutputStream.class),
+                Mockito.any(OutputStream.class)
+        )).thenReturn(42);
+    }
+
+    @After
+    public void tearDown() {
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void executeAsynchronously() throws Exception {
+
+        final ConfigTransfer transfer = new ConfigTransfer(new CLITransport(pool), new Timings(), executor);
+
+        final CommandResponse.Accumulator rsp = transfer.executeAsync(destination, "", "get-job", "dst").get();
+
+        assertEquals(42, rsp.returnCode());
+        Mockito.verify(cli).execute(
+                Mockito.eq(Arrays.asList("get-job", "dst")),
+                Mockito.any(InputStream.class),
+                Mockito.any(OutputStream.class),
+                Mockito.any(OutputStream.class)
+        );
+        Mockito.verify(pool).release(destination.instance(), cli);
+    }
+
+    @Test
+    public void executeAsynchronouslyUsingDefaultExecutor() throws Exception {
+
+        final ConfigTransfer transfer = new ConfigTransfer(pool);
+
+        assertEquals(42, transfer.executeAsync(destination, "", "get-job", "dst").get().returnCode());
+    }
+
+    @Test
+    public void fetchAll() throws Exception {
+
+        Mockito.when(cli.execute(
+                Mockito.eq(Arrays.asList("groovy", "=", "a", "missing", "b")),
+                Mockito.any(InputStream.class),
+                Mockito.any(OutputStream.class),
+                Mockito.any(OutputStream.class)
+        )).thenAnswer(new Answer<Integer>() {
+            public Integer answer(final InvocationOnMock invocation) throws IOException {
+
+                final OutputStream out = (OutputStream) invocation.getArguments()[2];
+                out.write("0 5\n<a/>\n1 7\nMissing0 4\n<b/>".getBytes("UTF-8"));
+                return 0;
+            }
+        });
+
+        final Map<String, CommandResponse.Accumulator> fetched = new ConfigTransfer(pool).fetchAll(
+                destination.instance(), "lookup", Arrays.asList("a", "missing", "b")
+        );
+
+        assertEquals(Arrays.asList("a", "missing", "b"), new ArrayList<String>(fetched.keySet()));
+        assertEquals("<a/>\n", fetched.get("a").stdout());
+        assertEquals(0, fetched.get("a").returnCode());
+        assertEquals("Missing\n", fetched.get("missing").stderr());
+        assertEquals(-1, fetched.get("missing").returnCode());
+        assertEquals("<b/>", fetched.get("b").stdout());
+    }
+
+    @Test
+    public void rejectTruncatedBulkFetch() throws Exception {
+
+        Mockito.when(cli.execute(
+                Mockito.eq(Arrays.asList("groovy", "=", "a", "b")),
+                Mockito.any(InputStream.class),
+                Mockito.any(OutputStream.class),
+                Mockito.any(OutputStream.class)
+        )).thenAnswer(new Answer<Integer>() {
+            public Integer answer(final InvocationOnMock invocation) throws IOException {
+
+                final OutputStream out = (OutputStream) invocation.getArguments()[2];
+                out.write("0 4\n<a/>0 40\n<b/>".getBytes("UTF-8"));
+                return 0;
+            }
+        });
+
+        assertNull(new ConfigTransfer(pool).fetchAll(destination.instance(), "lookup", Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void bulkFetchNotPermitted() throws Exception {
+
+        assertNull(new ConfigTransfer(pool).fetchAll(destination.instance(), "lookup", Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void sendAll() throws Exception {
+
+        final List<String> script = new ArrayList<String>();
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Mockito.when(cli.execute(
+                Mockito.anyListOf(String.class),
+                Mockito.any(InputStream.class),
+                Mockito.any(OutputStream.class),
+                Mockito.any(OutputStream.class)
+        )).thenAnswer(new Answer<Integer>() {
+            public Integer answer(final InvocationOnMock invocation) throws IOException {
+
+                @SuppressWarnings("unchecked")
+                final List<String> args = (List<String>) invocation.getArguments()[0];
+                assertEquals(Arrays.asList("groovy", args.get(1), "true"), args);
+                script.add(Files.toString(new File(args.get(1)), Charsets.UTF_8));
+                ByteStreams.copy((InputStream) invocation.getArguments()[1], payload);
+
+                final OutputStream out = (OutputStream) invocation.getArguments()[2];
+                out.write("0 0\n1 6\nExists".getBytes("UTF-8"));
+                return 0;
+            }
+        });
+
+        final Map<String, String> configs = new LinkedHashMap<String, String>();
+        configs.put("a", "<a/>");
+        configs.put("\u017e", "<\u017e/>");
+        final Map<String, CommandResponse.Accumulator> sent = new ConfigTransfer(pool).sendAll(
+                destination.instance(), "statements", true, configs
+        );
+
+        assertThat(script.get(0), startsWith("// Bulk send\n"));
+        assertThat(script.get(0), containsString("\nstatements\n"));
+        assertEquals("1 4\na<a/>2 6\n\u017e<\u017e/>", payload.toString("UTF-8"));
+        assertEquals(Arrays.asList("a", "\u017e"), new ArrayList<String>(sent.keySet()));
+        assertEquals(0, sent.get("a").returnCode());
+        assertEquals(-1, sent.get("\u017e").returnCode());
+        assertEquals("Exists\n", sent.get("\u017e").stderr());
+    }
+
+    @Test
+    public void bulkSendNotPermitted() throws Exception {
+
+        assertNull(new ConfigTransfer(pool).sendAll(
+                destination.instance(), "statements", false, Collections.singletonMap("a", "<a/>")
+        ));
+    }
+}
@@ -0,0 +1,160 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DestinationsTest {
+
+    private final ConfigDestination source = new ConfigDestination("http://src.com/", "job");
+
+    private final UrlParser parser = new UrlParser() {
+        @Override
+        protected ConfigDestination parseDestination(final URL url) {
+            return new ConfigDestination(url, "");
+        }
+    };
+
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+
+        for (final File file: files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void givenDestinationsFirst() throws IOException {
+
+        final List<ConfigDestination> given = Arrays.asList(
+                new ConfigDestination("http://a.com/", "given"),
+                new ConfigDestination("http://b.com/", "given")
+        );
+
+        final Destinations destinations = destinations(given, Arrays.asList(manifest(
+                "http://c.com/::from-file",
+                "http://d.com/"
+        )), "");
+
+        assertEquals(Arrays.asList(
+                "http://a.com/::given",
+                "http://b.com/::given",
+                "http://c.com/::from-file",
+                "http://d.com/::job"
+        ), consume(destinations));
+        assertFalse(destinations.failed());
+    }
+
+    @Test
+    public void skipDuplicatesBlankLinesAndComments() throws IOException {
+
+        final Destinations destinations = destinations(
+                Collections.singletonList(new ConfigDestination("http://a.com/", "job")),
+                Arrays.asList(manifest(
+                        "# Comment",
+                        "http://a.com/",
+                        "",
+                        "  http://b.com/::job  ",
+                        "http://B.com:80/::job"
+                )),
+                ""
+        );
+
+        assertEquals(Arrays.asList("http://a.com/::job", "http://b.com/::job"), consume(destinations));
+    }
+
+    @Test
+    public void readStandardInput() throws IOException {
+
+        final Destinations destinations = destinations(
+                Collections.<ConfigDestination>emptyList(),
+                Arrays.asList("-", manifest("http://b.com/::job")),
+                "http://a.com/::job\n"
+        );
+
+        assertEquals(Arrays.asList("http://a.com/::job", "http://b.com/::job"), consume(destinations));
+    }
+
+    @Test
+    public void reportInvalidLinesAndContinue() throws IOException {
+
+        final String manifest = manifest(
+                "http://src.com/::job",
+                "not-an-url",
+                "http://a.com/::job"
+        );
+        final Destinations destinations = destinations(
+                Collections.<ConfigDestination>emptyList(), Arrays.asList(manifest), ""
+        );
+
+        assertEquals(Arrays.asList("http://a.com/::job"), consume(destinations));
+        assertTrue(destinations.failed());
+        assertThat(err.toString(), containsString(manifest + ":1: Invalid destination http://src.com/::job"));
+        assertThat(err.toString(), containsString(manifest + ":2: Invalid destination not-an-url"));
+    }
+
+    @Test(expected = HandlerException.class)
+    public void failOnMissingManifest() {
+
+        consume(destinations(
+                Collections.<ConfigDestination>emptyList(),
+                Arrays.asList("/no/such/manifest"),
+                ""
+        ));
+    }
+
+    private Destinations destinations(final List<ConfigDestination> given, final List<String> manifests, final String stdin) {
+
+        final InputStream in = new ByteArrayInputStream(stdin.getBytes());
+        return new Destinations(parser, source, given, manifests, in, new PrintStream(err));
+    }
+
+    private List<String> consume(final Destinations destinations) {
+
+        final List<String> ret = new ArrayList<String>();
+        while (destinations.hasNext()) {
+            final ConfigDestination dest = destinations.next();
+            ret.add(dest.instance() + "::" + dest.entity());
+        }
+        destinations.close();
+        return ret;
+    }
+
+    private String manifest(final String... lines) throws IOException {
+
+        final File file = File.createTempFile("destinations", ".txt");
+        files.add(file);
+
+        final PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8");
+        try {
+            for (final String line: lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+
+        return file.getPath();
+    }
+}
@@ -0,0 +1,554 @@
+package org.jenkinsci.tools.configcloner;
+
+import hudson.cli.CLI;
+import hudson.cli.CliEntryPoint;
+import hudson.remoting.Channel;
+import hudson.remoting.Pipe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for Jenkins speaking remoting based CLI protocol used by {@link CLI}.
+ *
+ * Serves get/create/update commands for jobs, views and nodes and list-jobs from memory. Groovy scripts are not
+ * evaluated, only scripts listing views or nodes and fetching or sending configurations in bulk are recognized.
+ * View {@value #PRIMARY_VIEW} stands for the primary view, listing scripts can leave it out.
+ * Script files are read directly as the instance runs in the same process as the client. Latency and failures
+ * can be injected to simulate remote instances. Authentication is not supported so use
+ * {@link #cliFactory()} to connect.
+ */
+public class FakeJenkins implements Closeable {
+
+    public static final String PRIMARY_VIEW = "all";
+
+    private static final String[] KINDS = {"job", "view", "node"};
+
+    private final ConcurrentMap<String, String> configs = new ConcurrentHashMap<String, String>();
+
+    private final List<String> invocations = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger commands = new AtomicInteger();
+
+    private final Random random = new Random();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(final Runnable r) {
+
+            final Thread thread = new Thread(r, "FakeJenkins");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile long connectLatency = 0;
+    private volatile long commandLatency = 0;
+    private volatile double failureRate = 0;
+
+    private ServerSocket cliSocket;
+    private HttpServer http;
+
+    /**
+     * Delay of every connection before CLI channel is established.
+     */
+    public FakeJenkins connectLatency(final long latency, final TimeUnit unit) {
+
+        connectLatency = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * Delay of every command invocation.
+     */
+    public FakeJenkins commandLatency(final long latency, final TimeUnit unit) {
+
+        commandLatency = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * Probability of command failing with non-zero return code.
+     */
+    public FakeJenkins failureRate(final double rate) {
+
+        if (rate < 0 || rate > 1) throw new IllegalArgumentException("Failure rate out of range: " + rate);
+
+        failureRate = rate;
+        return this;
+    }
+
+    public FakeJenkins start() throws IOException {
+
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+        cliSocket = new ServerSocket(0, 50, loopback);
+        executor.submit(new Runnable() {
+            public void run() {
+                accept();
+            }
+        });
+
+        http = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        http.setExecutor(executor);
+        http.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                exchange.getResponseHeaders().add("X-Jenkins", "1.580.3");
+                exchange.getResponseHeaders().add("X-Jenkins-CLI-Port", String.valueOf(cliSocket.getLocalPort()));
+                exchange.getResponseHeaders().add("X-Hudson-CLI-Port", String.valueOf(cliSocket.getLocalPort()));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        http.start();
+
+        return this;
+    }
+
+    public void close() {
+
+        if (http != null) {
+            http.stop(0);
+        }
+
+        if (cliSocket != null) {
+            try {
+                cliSocket.close();
+            } catch (IOException ex) {
+                // Closing anyway
+            }
+        }
+
+        executor.shutdownNow();
+    }
+
+    public URL url() {
+
+        try {
+
+            return new URL("http://127.0.0.1:" + http.getAddress().getPort() + "/");
+        } catch (MalformedURLException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Entity locator in form accepted by handlers.
+     */
+    public String locator(final String entity) {
+
+        return url() + "::" + entity;
+    }
+
+    public FakeJenkins put(final String kind, final String name, final String xml) {
+
+        configs.put(key(kind, name), xml);
+        return this;
+    }
+
+    public String get(final String kind, final String name) {
+
+        return configs.get(key(kind, name));
+    }
+
+    /**
+     * Number of CLI connections accepted so far.
+     */
+    public int connections() {
+
+        return connections.get();
+    }
+
+    /**
+     * Commands invoked so far including the first argument, if any.
+     */
+    public List<String> invocations() {
+
+        synchronized (invocations) {
+            return new ArrayList<String>(invocations);
+        }
+    }
+
+    /**
+     * Number of CLI commands invoked so far.
+     */
+    public int commands() {
+
+        return commands.get();
+    }
+
+    /**
+     * Factory connecting anonymously as authentication is not supported.
+     */
+    public static CLIFactory cliFactory() {
+
+        return new CLIFactory() {
+            @Override
+            public CLI create(final URL destination) throws IOException, InterruptedException {
+
+                return new CLI(destination);
+            }
+        };
+    }
+
+    private static String key(final String kind, final String name) {
+
+        return kind + "/" + name;
+    }
+
+    private void accept() {
+
+        while (!cliSocket.isClosed()) {
+
+            final Socket socket;
+            try {
+
+                socket = cliSocket.accept();
+            } catch (SocketException ex) {
+
+                return; // Closed
+            } catch (IOException ex) {
+
+                continue;
+            }
+
+            executor.submit(new Runnable() {
+                public void run() {
+                    serve(socket);
+                }
+            });
+        }
+    }
+
+    private void serve(final Socket socket) {
+
+        try {
+
+            final String protocol = new DataInputStream(socket.getInputStream()).readUTF();
+            if (!"Protocol:CLI-connect".equals(protocol)) {
+                socket.close();
+                return;
+            }
+
+            connections.incrementAndGet();
+            sleep(connectLatency);
+
+            final Channel channel = new Channel(
+                    "FakeJenkins CLI connection",
+                    executor,
+                    new BufferedInputStream(socket.getInputStream()),
+                    new BufferedOutputStream(socket.getOutputStream())
+            );
+            channel.setProperty(CliEntryPoint.class.getName(), new EntryPoint());
+            channel.join();
+        } catch (IOException ex) {
+
+            // Client gone
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+        } finally {
+
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private int invoke(final List<String> args, final InputStream stdin, final PrintStream out, final PrintStream err) throws IOException {
+
+        commands.incrementAndGet();
+        sleep(commandLatency);
+
+        if (args.isEmpty()) {
+            err.println("No command specified");
+            return -1;
+        }
+
+        final String command = args.get(0);
+        invocations.add(args.size() > 1 ? command + " " + args.get(1) : command);
+
+        if ("list-jobs".equals(command)) return list("job", null, out);
+
+        if ("groovy".equals(command)) {
+
+            final boolean file = args.size() > 1 && !"=".equals(args.get(1));
+            final String script = file ? read(new File(args.get(1))) : read(stdin);
+            if (script.startsWith("// Bulk send")) return bulkSend(script, Boolean.parseBoolean(args.get(2)), stdin, out);
+            if (script.startsWith("// Bulk fetch")) return bulkFetch(script, args.subList(2, args.size()), out);
+            if (script.contains(".views")) {
+                return list("view", script.contains("primaryView") ? PRIMARY_VIEW : null, out);
+            }
+            if (script.contains(".nodes")) return list("node", null, out);
+
+            err.println("FakeJenkins can not evaluate " + script);
+            return 1;
+        }
+
+        final String kind = kind(command);
+        if (kind == null || args.size() < 2) {
+            err.println("No such command " + command);
+            return 255;
+        }
+
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            err.println("Injected failure of " + command);
+            return 1;
+        }
+
+        final String name = args.get(1);
+        final String key = key(kind, name);
+
+        if (command.startsWith("get-")) {
+
+            final String xml = configs.get(key);
+            if (xml == null) {
+                err.println("No such " + kind + " '" + name + "'");
+                return 3;
+            }
+
+            out.print(xml);
+            return 0;
+        }
+
+        final String xml = read(stdin);
+        if (command.startsWith("create-")) {
+
+            if (configs.putIfAbsent(key, xml) != null) {
+                err.println(kind + " '" + name + "' already exists");
+                return 4;
+            }
+
+            return 0;
+        }
+
+        if (configs.replace(key, xml) == null) {
+            err.println("No such " + kind + " '" + name + "'");
+            return 3;
+        }
+
+        return 0;
+    }
+
+    private int list(final String kind, final @CheckForNull String excluded, final PrintStream out) {
+
+        for (final String key: configs.keySet()) {
+            if (key.startsWith(kind + "/") && !key.equals(kind + "/" + excluded)) {
+                out.println(key.substring(kind.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Respond the way {@link org.jenkinsci.tools.configcloner.ConfigTransfer#fetchAll} script does.
+     */
+    private int bulkFetch(final String script, final List<String> names, final PrintStream out) throws IOException {
+
+        final String kind = script.contains("getItemByFullName")
+                ? "job"
+                : script.contains("getNode(") ? "node" : "view"
+        ;
+
+        for (final String name: names) {
+
+            final String xml = configs.get(key(kind, name));
+            final byte[] bytes = (xml == null ? "No such " + kind + " '" + name + "'" : xml).getBytes("UTF-8");
+            out.write(((xml == null ? 1 : 0) + " " + bytes.length + "\n").getBytes("UTF-8"));
+            out.write(bytes);
+        }
+        return 0;
+    }
+
+    /**
+     * Respond the way {@link org.jenkinsci.tools.configcloner.ConfigTransfer#sendAll} script does.
+     */
+    private int bulkSend(final String script, final boolean force, final InputStream stdin, final PrintStream out) throws IOException {
+
+        final String kind = script.contains("createProjectFromXML")
+                ? "job"
+                : script.contains("addNode(") ? "node" : "view"
+        ;
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stdin));
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+
+            if (b != '\n') {
+                header.write(b);
+                continue;
+            }
+
+            final String[] lengths = header.toString("UTF-8").split(" ");
+            header.reset();
+            final byte[] name = new byte[Integer.parseInt(lengths[0])];
+            in.readFully(name);
+            final byte[] xml = new byte[Integer.parseInt(lengths[1])];
+            in.readFully(xml);
+
+            final String key = key(kind, new String(name, "UTF-8"));
+            final String config = new String(xml, "UTF-8");
+            String message = "";
+            if (failureRate > 0 && random.nextDouble() < failureRate) {
+                message = "Injected failure of " + kind + " '" + new String(name, "UTF-8") + "'";
+            } else if (force) {
+                // Jenkins.addNode keeps existing node of the same name
+                if (!"node".equals(kind) || script.contains("removeNode(") || !configs.containsKey(key)) {
+                    configs.put(key, config);
+                }
+            } else if (configs.putIfAbsent(key, config) != null) {
+                message = kind + " '" + new String(name, "UTF-8") + "' already exists";
+            }
+
+            final byte[] bytes = message.getBytes("UTF-8");
+            out.write(((message.isEmpty() ? 0 : 1) + " " + bytes.length + "\n").getBytes("UTF-8"));
+            out.write(bytes);
+        }
+        return 0;
+    }
+
+    private static String kind(final String command) {
+
+        for (final String kind: KINDS) {
+            if (command.equals("get-" + kind) || command.equals("create-" + kind) || command.equals("update-" + kind)) {
+                return kind;
+            }
+        }
+
+        return null;
+    }
+
+    private static String read(final InputStream stdin) throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = stdin.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+
+        return buffer.toString("UTF-8");
+    }
+
+    private static String read(final File file) throws IOException {
+
+        final InputStream in = new FileInputStream(file);
+        try {
+
+            return read(in);
+        } finally {
+
+            in.close();
+        }
+    }
+
+    private static void sleep(final long millis) throws InterruptedIOException {
+
+        if (millis <= 0) return;
+
+        try {
+
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Exported to the client as {@link CliEntryPoint} the same way Jenkins does.
+     */
+    private final class EntryPoint implements CliEntryPoint, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public int main(
+                final List<String> args, final Locale locale,
+                final InputStream stdin, final OutputStream stdout, final OutputStream stderr
+        ) {
+
+            final PrintStream err = new PrintStream(stderr, true);
+            try {
+
+                final PrintStream out = new PrintStream(stdout, true, "UTF-8");
+                try {
+
+                    return invoke(args, stdin, out, err);
+                } finally {
+
+                    out.flush();
+                }
+            } catch (IOException ex) {
+
+                ex.printStackTrace(err);
+                return -1;
+            } finally {
+
+                err.flush();
+            }
+        }
+
+        public boolean hasCommand(final String name) {
+
+            return "list-jobs".equals(name) || "groovy".equals(name) || kind(name) != null;
+        }
+
+        public int protocolVersion() {
+
+            return VERSION;
+        }
+
+        public void authenticate(final String protocol, final Pipe c2s, final Pipe s2c) throws IOException {
+
+            throw new IOException("FakeJenkins accepts anonymous connections only");
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+
+            return Channel.current().export(CliEntryPoint.class, this);
+        }
+    }
+}
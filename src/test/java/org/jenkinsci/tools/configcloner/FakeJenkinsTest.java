@@ -0,0 +1,199 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FakeJenkinsTest {
+
+    private static final String XML = "<?xml version='1.0' encoding='UTF-8'?>\n<project><description>Fake</description></project>\n";
+
+    private FakeJenkins src;
+    private FakeJenkins dst;
+    private CLIPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+
+        src = new FakeJenkins().start().put("job", "src-job", XML);
+        dst = new FakeJenkins().start();
+        pool = new CLIPool(FakeJenkins.cliFactory());
+    }
+
+    @After
+    public void tearDown() {
+
+        pool.close();
+        src.close();
+        dst.close();
+    }
+
+    @Test
+    public void cloneJob() {
+
+        final CommandResponse.Accumulator rsp = run("job", src.locator("src-job"), dst.locator("dst-job"));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("job", "dst-job"), equalTo(XML));
+    }
+
+    @Test
+    public void refuseToOverwriteUnlessForced() {
+
+        dst.put("job", "dst-job", "<project/>");
+
+        CommandResponse.Accumulator rsp = run("job", src.locator("src-job"), dst.locator("dst-job"));
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("already exists"));
+
+        rsp = run("job", "-f", src.locator("src-job"), dst.locator("dst-job"));
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("job", "dst-job"), equalTo(XML));
+    }
+
+    @Test
+    public void cloneMatchingJobs() {
+
+        src.put("job", "team-a", XML).put("job", "team-b", XML);
+
+        final CommandResponse.Accumulator rsp = run("job", src.locator("team-*"), dst.locator("new-*"));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("job", "new-a"), equalTo(XML));
+        assertThat(dst.get("job", "new-b"), equalTo(XML));
+        assertThat(dst.get("job", "new-src-job"), nullValue());
+    }
+
+    @Test
+    public void fetchMatchingJobsInBulk() {
+
+        for (int i = 0; i < 30; i++) {
+            src.put("job", "bulk-" + i, XML.replace("Fake", "Bulk " + i));
+        }
+
+        final CommandResponse.Accumulator rsp = run("job", "--bulk-threshold", "10", src.locator("bulk-*"), dst.locator("copy-*"));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        for (int i = 0; i < 30; i++) {
+            assertThat(dst.get("job", "copy-" + i), equalTo(src.get("job", "bulk-" + i)));
+        }
+        assertThat(src.invocations(), equalTo(Arrays.asList("list-jobs", "groovy =")));
+    }
+
+    @Test
+    public void sendMatchingJobsInBulk() {
+
+        for (int i = 0; i < 30; i++) {
+            src.put("job", "bulk-" + i, XML.replace("Fake", "Bulk " + i));
+        }
+        dst.put("job", "copy-7", "<project/>");
+
+        final CommandResponse.Accumulator rsp = run("job", "--bulk-threshold", "10", src.locator("bulk-*"), dst.locator("copy-*"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("job 'copy-7' already exists"));
+        assertThat(dst.get("job", "copy-7"), equalTo("<project/>"));
+        for (int i = 0; i < 30; i++) {
+            if (i == 7) continue;
+            assertThat(dst.get("job", "copy-" + i), equalTo(src.get("job", "bulk-" + i)));
+        }
+
+        final List<String> invocations = dst.invocations();
+        assertEquals(1, invocations.size());
+        assertThat(invocations.get(0), startsWith("groovy "));
+        assertThat(invocations.get(0), not(equalTo("groovy =")));
+    }
+
+    @Test
+    public void sendMatchingJobsInBulkConcurrently() {
+
+        for (int i = 0; i < 30; i++) {
+            src.put("job", "bulk-" + i, XML.replace("Fake", "Bulk " + i));
+        }
+
+        final CommandResponse.Accumulator rsp = run(
+                "job", "--bulk-threshold", "10", "--parallel", "4", "-e", "s/Bulk/Sent/",
+                src.locator("bulk-*"), dst.locator("copy-*")
+        );
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        for (int i = 0; i < 30; i++) {
+            assertThat(rsp.stdout(), containsString(String.format("Fetching %s%n", src.locator("bulk-" + i))));
+            assertThat(dst.get("job", "copy-" + i), containsString("<description>Sent " + i + "</description>"));
+        }
+
+        assertEquals(1, dst.invocations().size());
+    }
+
+    @Test
+    public void replaceNodesInBulk() {
+
+        for (int i = 0; i < 15; i++) {
+            src.put("node", "node-" + i, "<slave><name>node-" + i + "</name></slave>");
+        }
+        dst.put("node", "node-3", "<slave><name>node-3</name><label>old</label></slave>");
+
+        final CommandResponse.Accumulator rsp = run(
+                "node", "--force", "--bulk-threshold", "10", src.locator("node-*"), dst.locator("node-*")
+        );
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        for (int i = 0; i < 15; i++) {
+            assertThat(dst.get("node", "node-" + i), equalTo(src.get("node", "node-" + i)));
+        }
+        assertEquals(1, dst.invocations().size());
+    }
+
+    @Test
+    public void reportMissingSource() {
+
+        final CommandResponse.Accumulator rsp = run("view", src.locator("no-such-view"), dst.locator("dst-view"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("No such view 'no-such-view'"));
+    }
+
+    @Test
+    public void injectFailures() {
+
+        dst.failureRate(1);
+
+        final CommandResponse.Accumulator rsp = run("job", src.locator("src-job"), dst.locator("dst-job"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("Injected failure of create-job"));
+    }
+
+    @Test
+    public void reuseConnections() {
+
+        run("job", src.locator("src-job"), dst.locator("a"));
+        run("job", src.locator("src-job"), dst.locator("b"));
+        run("job", src.locator("src-job"), dst.locator("c"));
+
+        assertEquals(1, src.connections());
+        assertEquals(1, dst.connections());
+        assertEquals(3, dst.commands());
+    }
+
+    private CommandResponse.Accumulator run(final String... args) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run(args);
+        return rsp;
+    }
+}
@@ -0,0 +1,46 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+import org.junit.Test;
+
+public class JenkinsInstanceTest {
+
+    @Test
+    public void normalizeUrl() {
+
+        final JenkinsInstance instance = JenkinsInstance.parse("http://jenkins.example.com/ci/");
+
+        assertThat(JenkinsInstance.parse("http://jenkins.example.com/ci"), equalTo(instance));
+        assertThat(JenkinsInstance.parse("HTTP://Jenkins.Example.com/ci/"), equalTo(instance));
+        assertThat(JenkinsInstance.parse("http://jenkins.example.com:80/ci/"), equalTo(instance));
+        assertThat(JenkinsInstance.parse("http://jenkins.example.com/ci/./"), equalTo(instance));
+    }
+
+    @Test
+    public void distinguishDifferentInstances() {
+
+        final JenkinsInstance instance = JenkinsInstance.parse("http://jenkins.example.com/ci/");
+
+        assertThat(JenkinsInstance.parse("https://jenkins.example.com/ci/"), not(equalTo(instance)));
+        assertThat(JenkinsInstance.parse("http://jenkins.example.com:8080/ci/"), not(equalTo(instance)));
+        assertThat(JenkinsInstance.parse("http://jenkins.example.com/"), not(equalTo(instance)));
+    }
+
+    @Test
+    public void keepProvidedUrl() {
+
+        assertThat(
+                JenkinsInstance.parse("http://jenkins.example.com:80/ci").toString(),
+                equalTo("http://jenkins.example.com:80/ci")
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidUrl() {
+
+        JenkinsInstance.parse("not-an-url");
+    }
+}
@@ -1,11 +1,17 @@
 package org.jenkinsci.tools.configcloner;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.text.IsEmptyString.isEmptyString;
 import static org.jenkinsci.tools.configcloner.handler.Helper.stdoutContains;
 import static org.jenkinsci.tools.configcloner.handler.Helper.succeeded;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import org.jenkinsci.tools.configcloner.CommandResponse.Accumulator;
 import org.jenkinsci.tools.configcloner.handler.Usage;
@@ -37,6 +43,41 @@ public class MainTest {
         assertThat(rsp, stdoutContains("Usage:"));
     }
 
+    @Test
+    public void reportTimingsWhenRequested() {
+
+        run("--timings", "help");
+
+        assertThat(rsp, succeeded());
+        assertThat(rsp, stdoutContains("Usage:"));
+        assertThat(rsp.stderr(), containsString("p95 [ms]"));
+    }
+
+    @Test
+    public void writeTimingsAsJson() throws IOException {
+
+        final File json = File.createTempFile("timings", ".json");
+        try {
+
+            run("--timings=json:" + json.getAbsolutePath(), "help");
+
+            assertThat(rsp, succeeded());
+            assertEquals("{}", new String(Files.readAllBytes(json.toPath()), "UTF-8").trim());
+        } finally {
+
+            json.delete();
+        }
+    }
+
+    @Test
+    public void rejectInvalidTimingsReport() {
+
+        run("--timings=xml", "help");
+
+        assertThat(rsp, not(succeeded()));
+        assertThat(rsp.stderr(), containsString("Invalid value of --timings: xml"));
+    }
+
     private Main run(String... args) {
 
         final CLIPool cliPool = new CLIPool(CLIFactory.provided());
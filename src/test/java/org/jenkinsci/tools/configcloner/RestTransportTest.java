@@ -0,0 +1,463 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class RestTransportTest {
+
+    private final Map<String, String> configs = new ConcurrentHashMap<String, String>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> fallback = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger crumbsIssued = new AtomicInteger();
+    private final AtomicInteger dropRequests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long latency = 0;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private JenkinsInstance instance;
+
+    @Before
+    public void setUp() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/jenkins/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                final int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+
+                    Thread.sleep(latency);
+                } catch (InterruptedException ex) {
+
+                    throw new IOException(ex);
+                } finally {
+
+                    // Before responding, client frees its permit once the response is read
+                    inFlight.decrementAndGet();
+                }
+
+                try {
+
+                    serve(exchange);
+                } finally {
+
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        instance = JenkinsInstance.parse("http://127.0.0.1:" + server.getAddress().getPort() + "/jenkins");
+    }
+
+    @After
+    public void tearDown() {
+
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void getAndCreateConfigurations() {
+
+        configs.put("/jenkins/job/folder/job/my%20job/config.xml", "<project/>");
+
+        final RestTransport transport = transport(8);
+        CommandResponse.Accumulator rsp = execute(transport, "", "get-job", "folder/my job");
+        assertEquals(0, rsp.returnCode());
+        assertEquals("<project/>", rsp.stdout());
+
+        rsp = execute(transport, "<new/>", "create-job", "folder/created");
+        assertEquals(rsp.stderr(), 0, rsp.returnCode());
+        assertEquals("<new/>", configs.get("/jenkins/job/folder/job/created/config.xml"));
+
+        rsp = execute(transport, "<updated/>", "update-view", "outer/inner");
+        assertEquals(rsp.stderr(), 0, rsp.returnCode());
+        assertEquals("<updated/>", configs.get("/jenkins/view/outer/view/inner/config.xml"));
+
+        assertEquals(1, crumbsIssued.get());
+        assertTrue(requests.contains("GET /jenkins/job/folder/job/my%20job/config.xml"));
+        assertTrue(requests.contains("POST /jenkins/job/folder/createItem?name=created"));
+    }
+
+    @Test
+    public void reportRedirectOfOtherThanCreateRequest() {
+
+        final RestTransport transport = transport(8);
+        CommandResponse.Accumulator rsp = execute(transport, "", "get-job", "login-required");
+        assertEquals(1, rsp.returnCode());
+        assertThat(rsp.stderr(), containsString("HTTP 302"));
+        assertThat(rsp.stderr(), containsString("redirected to /jenkins/login?from=/jenkins/job/login-required/config.xml"));
+
+        rsp = execute(transport, "<updated/>", "update-job", "login-required");
+        assertEquals(1, rsp.returnCode());
+        assertThat(rsp.stderr(), containsString("redirected to /jenkins/login"));
+    }
+
+    @Test
+    public void reportMissingEntity() {
+
+        final CommandResponse.Accumulator rsp = execute(transport(8), "", "get-view", "missing");
+
+        assertEquals(3, rsp.returnCode());
+        assertThat(rsp.stderr(), containsString("No such view 'missing'"));
+    }
+
+    @Test
+    public void reportRejectedRequest() {
+
+        configs.put("/jenkins/job/existing/config.xml", "<project/>");
+
+        final CommandResponse.Accumulator rsp = execute(transport(8), "<new/>", "create-job", "existing");
+
+        assertEquals(1, rsp.returnCode());
+        assertThat(rsp.stderr(), containsString("HTTP 400"));
+        assertThat(rsp.stderr(), containsString("A job already exists with the name existing"));
+    }
+
+    @Test
+    public void reportOverloadedInstance() {
+
+        final CommandResponse.Accumulator rsp = execute(transport(8), "", "get-job", "overloaded");
+
+        assertEquals(Transport.OVERLOADED, rsp.returnCode());
+        assertThat(rsp.stderr(), containsString("HTTP 503"));
+    }
+
+    @Test
+    public void requestCrumbAgainWhenRejected() {
+
+        final RestTransport transport = transport(8);
+        assertEquals(0, execute(transport, "<a/>", "create-job", "a").returnCode());
+
+        // Server restarted
+        crumbsIssued.set(10);
+
+        final CommandResponse.Accumulator rsp = execute(transport, "<b/>", "create-job", "b");
+        assertEquals(rsp.stderr(), 0, rsp.returnCode());
+        assertEquals(11, crumbsIssued.get());
+    }
+
+    @Test
+    public void resendWhenConnectionIsClosedWithoutResponse() {
+
+        final RestTransport transport = transport(8);
+        assertEquals(0, execute(transport, "<a/>", "update-job", "a").returnCode());
+
+        dropRequests.set(1);
+        requests.clear();
+
+        final CommandResponse.Accumulator rsp = execute(transport, "<b/>", "update-job", "a");
+        assertEquals(rsp.stderr(), 0, rsp.returnCode());
+        assertEquals("<b/>", configs.get("/jenkins/job/a/config.xml"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void doNotResendCreateRequestThatMightHaveBeenProcessed() {
+
+        final RestTransport transport = transport(8);
+        assertEquals(0, execute(transport, "<a/>", "create-job", "a").returnCode());
+
+        dropRequests.set(1);
+        requests.clear();
+
+        try {
+            execute(transport, "<b/>", "create-job", "b");
+            fail();
+        } catch (HandlerException ex) {
+            // expected
+        }
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void requestCrumbAgainAfterReconnecting() {
+
+        final RestTransport transport = transport(8);
+        assertEquals(0, execute(transport, "<a/>", "update-job", "a").returnCode());
+
+        // Server restarted
+        dropRequests.set(1);
+        crumbsIssued.set(10);
+        requests.clear();
+
+        final CommandResponse.Accumulator rsp = execute(transport, "<b/>", "update-job", "a");
+        assertEquals(rsp.stderr(), 0, rsp.returnCode());
+        assertEquals(11, crumbsIssued.get());
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void listJobs() {
+
+        configs.put("/jenkins/job/a/config.xml", "<project/>");
+        configs.put("/jenkins/job/b/config.xml", "<project/>");
+
+        final CommandResponse.Accumulator rsp = execute(transport(8), "", "list-jobs");
+
+        assertEquals(0, rsp.returnCode());
+        assertEquals(Arrays.asList("a", "b"), sorted(rsp.stdout().split("\n")));
+    }
+
+    @Test
+    public void evaluateScript() {
+
+        final CommandResponse.Accumulator rsp = execute(transport(8), "println 'a & b'", "groovy", "=");
+
+        assertEquals(0, rsp.returnCode());
+        assertEquals("script=println 'a & b'", rsp.stdout());
+    }
+
+    @Test
+    public void delegateCommandsWithoutHttpCounterpart() {
+
+        final RestTransport transport = transport(8);
+        assertEquals(42, execute(transport, "", "groovy", "=", "arg").returnCode());
+        assertEquals(42, execute(transport, "<slave/>", "create-node", "n").returnCode());
+
+        assertEquals(Arrays.asList("groovy = arg", "create-node n"), fallback);
+        assertEquals(Collections.<String>emptyList(), requests);
+    }
+
+    @Test
+    public void authenticate() {
+
+        final RestTransport transport = new RestTransport(new Fallback(), "user", "token", 8);
+        configs.put("/jenkins/job/a/config.xml", "<project/>");
+
+        final CommandResponse.Accumulator rsp = execute(transport, "", "get-job", "a");
+
+        assertEquals(0, rsp.returnCode());
+        assertTrue(requests.toString(), requests.contains("Basic dXNlcjp0b2tlbg== GET /jenkins/job/a/config.xml"));
+    }
+
+    @Test
+    public void limitRequestsInFlight() throws Exception {
+
+        latency = 50;
+        configs.put("/jenkins/job/a/config.xml", "<project/>");
+        final RestTransport transport = transport(2);
+
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+
+                    return execute(transport, "", "get-job", "a").returnCode();
+                }
+            });
+        }
+
+        final ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+
+            for (final Future<Integer> result: clients.invokeAll(tasks, 10, TimeUnit.SECONDS)) {
+                assertEquals(0, (int) result.get());
+            }
+        } finally {
+
+            clients.shutdownNow();
+        }
+
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void warmUpRequestsCrumbs() {
+
+        transport(8).warmUp(Arrays.asList(instance), 10, TimeUnit.SECONDS);
+
+        assertEquals(1, crumbsIssued.get());
+    }
+
+    @Test(expected = HandlerException.class)
+    public void failToWarmUpUnreachableInstance() {
+
+        server.stop(0);
+
+        transport(8).warmUp(Arrays.asList(instance), 10, TimeUnit.SECONDS);
+    }
+
+    private RestTransport transport(final int connections) {
+
+        return new RestTransport(new Fallback(), null, null, connections);
+    }
+
+    private CommandResponse.Accumulator execute(final Transport transport, final String stdin, final String... command) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        try {
+
+            final InputStream in = new ByteArrayInputStream(stdin.getBytes("UTF-8"));
+            return rsp.returnCode(transport.execute(instance, Arrays.asList(command), in, rsp.out(), rsp.err()));
+        } catch (IOException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Emulate the subset of Jenkins HTTP API used by {@link RestTransport}.
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getRawPath();
+        final String query = exchange.getRequestURI().getRawQuery();
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+
+        if (path.endsWith("/crumbIssuer/api/xml")) {
+            respond(exchange, 200, "Jenkins-Crumb:crumb-" + crumbsIssued.incrementAndGet());
+            return;
+        }
+
+        requests.add((authorization == null ? "" : authorization + " ")
+                + method + " " + path + (query == null ? "" : "?" + query)
+        );
+        final String body = read(exchange.getRequestBody());
+
+        if (dropRequests.getAndDecrement() > 0) {
+
+            // Close connection without response the way server closes idle keep-alive connection
+            exchange.close();
+            return;
+        }
+
+        if ("POST".equals(method)) {
+
+            final String crumb = exchange.getRequestHeaders().getFirst("Jenkins-Crumb");
+            if (!("crumb-" + crumbsIssued.get()).equals(crumb)) {
+                respond(exchange, 403, "No valid crumb was included in the request");
+                return;
+            }
+        }
+
+        if (path.equals("/jenkins/api/xml")) {
+
+            final StringBuilder list = new StringBuilder("<hudson>");
+            for (final String key: configs.keySet()) {
+                list.append("<job><name>").append(key.split("/")[3]).append("</name></job>");
+            }
+            respond(exchange, 200, list.append("</hudson>").toString());
+        } else if (path.equals("/jenkins/scriptText")) {
+
+            respond(exchange, 200, java.net.URLDecoder.decode(body, "UTF-8"));
+        } else if (path.endsWith("/createItem")) {
+
+            final String name = query.substring("name=".length());
+            final String key = path.replace("createItem", "job/" + name + "/config.xml");
+            if (configs.containsKey(key)) {
+                exchange.getResponseHeaders().add("X-Error", "A job already exists with the name " + name);
+                respond(exchange, 400, "");
+                return;
+            }
+            configs.put(key, body);
+            // Jenkins redirects to the created job
+            exchange.getResponseHeaders().add("Location", path.replace("createItem", "job/" + name + "/"));
+            respond(exchange, 302, "Redirecting");
+        } else if (path.contains("/job/overloaded/")) {
+
+            respond(exchange, 503, "Service Unavailable");
+        } else if (path.contains("/job/login-required/")) {
+
+            exchange.getResponseHeaders().add("Location", "/jenkins/login?from=" + path);
+            respond(exchange, 302, "Redirecting");
+        } else if ("GET".equals(method) && configs.containsKey(path)) {
+
+            respond(exchange, 200, configs.get(path));
+        } else if ("POST".equals(method) && path.endsWith("/config.xml")) {
+
+            configs.put(path, body);
+            respond(exchange, 200, "");
+        } else {
+
+            respond(exchange, 404, "Not found");
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int code, final String body) throws IOException {
+
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(final InputStream in) throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toString("UTF-8");
+    }
+
+    private static List<String> sorted(final String... lines) {
+
+        final List<String> list = new ArrayList<String>(Arrays.asList(lines));
+        Collections.sort(list);
+        return list;
+    }
+
+    private final class Fallback implements Transport {
+
+        public int execute(
+                final JenkinsInstance instance,
+                final List<String> command,
+                final InputStream stdin,
+                final OutputStream out,
+                final OutputStream err
+        ) {
+
+            final StringBuilder line = new StringBuilder();
+            for (final String arg: command) {
+                line.append(line.length() == 0 ? "" : " ").append(arg);
+            }
+            fallback.add(line.toString());
+            return 42;
+        }
+
+        public void warmUp(final Collection<JenkinsInstance> instances, final long timeout, final TimeUnit unit) {}
+    }
+}
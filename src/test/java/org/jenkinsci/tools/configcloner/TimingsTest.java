@@ -0,0 +1,66 @@
+package org.jenkinsci.tools.configcloner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Test;
+
+public class TimingsTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void computePercentiles() {
+
+        final long[] values = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (values.length - i) * MS;
+        }
+
+        final Timings.Summary summary = new Timings.Summary(values);
+
+        assertEquals(100, summary.count);
+        assertEquals(50 * MS, summary.p50);
+        assertEquals(95 * MS, summary.p95);
+        assertEquals(99 * MS, summary.p99);
+        assertEquals(100 * MS, summary.max);
+    }
+
+    @Test
+    public void reportPerOperationAndHost() throws UnsupportedEncodingException {
+
+        final Timings timings = new Timings();
+        timings.record("get-job", "http://src/", 10 * MS);
+        timings.record("create-job", "http://dst1/", 20 * MS);
+        timings.record("create-job", "http://dst2/", 40 * MS);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        timings.report(new PrintStream(out, true, "UTF-8"));
+        final String report = out.toString("UTF-8");
+
+        assertThat(report, containsString("get-job"));
+        assertThat(report, containsString("http://dst1/"));
+        assertThat(report, containsString("40.0"));
+    }
+
+    @Test
+    public void reportJson() throws UnsupportedEncodingException {
+
+        final Timings timings = new Timings();
+        timings.record("get-job", "http://src/", 10 * MS);
+        timings.record("get-job", "http://src/", 30 * MS);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        timings.reportJson(new PrintStream(out, true, "UTF-8"));
+
+        assertEquals(
+                "{\"get-job\":{\"http://src/\":{\"count\":2,\"p50\":10.0,\"p95\":30.0,\"p99\":30.0,\"max\":30.0}}}",
+                out.toString("UTF-8").trim()
+        );
+    }
+}
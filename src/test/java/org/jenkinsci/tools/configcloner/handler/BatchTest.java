@@ -0,0 +1,129 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.jenkinsci.tools.configcloner.CLIFactory;
+import org.jenkinsci.tools.configcloner.CLIPool;
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.Main;
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchTest {
+
+    private final CLIPool pool = new CLIPool(CLIFactory.system());
+    private File file;
+
+    @After
+    public void tearDown() {
+
+        pool.close();
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void tokenize() {
+
+        assertEquals(Arrays.asList("job", "a", "b"), Batch.tokenize("  job a\tb "));
+        assertEquals(Arrays.asList("job", "-e", "s/a b/c/"), Batch.tokenize("job -e 's/a b/c/'"));
+        assertEquals(Arrays.asList("a \"b\" $c", "d\\e"), Batch.tokenize("\"a \\\"b\\\" \\$c\" 'd\\e'"));
+        assertEquals(Arrays.asList("a b", "c"), Batch.tokenize("a\\ b c"));
+        assertEquals(Arrays.asList("", "ab"), Batch.tokenize("'' a\"b\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedQuote() {
+
+        Batch.tokenize("job 'a b");
+    }
+
+    @Test
+    public void reportStatusOfEveryLine() throws IOException {
+
+        final CommandResponse.Accumulator rsp = run("batch", batch(
+                "# Comment",
+                "help",
+                "",
+                "job",
+                "help 'unterminated"
+        ));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stdout(), containsString("[OK] " + file + ":2 help"));
+        assertThat(rsp.stderr(), containsString("[FAILED -1] " + file + ":4 job"));
+        assertThat(rsp.stderr(), containsString("Unterminated quote"));
+        assertThat(rsp.stderr(), containsString("[FAILED -1] " + file + ":5 help 'unterminated"));
+        assertThat(rsp.stdout(), containsString("1 of 3 commands succeeded"));
+    }
+
+    @Test
+    public void keepOrderWhenConcurrent() throws IOException {
+
+        final String[] lines = new String[50];
+        Arrays.fill(lines, "help");
+        final CommandResponse.Accumulator rsp = run("batch", "--parallel", "8", batch(lines));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        int last = -1;
+        for (int i = 1; i <= lines.length; i++) {
+
+            final int index = rsp.stdout().indexOf("[OK] " + file + ":" + i + " help");
+            assertTrue("Line " + i + " out of order", index > last);
+            last = index;
+        }
+        assertThat(rsp.stdout(), containsString("50 of 50 commands succeeded"));
+    }
+
+    @Test
+    public void failFast() throws IOException {
+
+        final CommandResponse.Accumulator rsp = run("batch", "--fail-fast", batch("help", "job", "help"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stdout(), not(containsString(":3 help")));
+        assertThat(rsp.stdout(), containsString("1 of 2 commands succeeded"));
+    }
+
+    @Test
+    public void refuseNestedBatch() throws IOException {
+
+        final CommandResponse.Accumulator rsp = run("batch", batch("batch other-file"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("Command batch can not be run in batch"));
+    }
+
+    private String batch(final String... lines) throws IOException {
+
+        file = File.createTempFile("batch", ".txt");
+        final PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8");
+        try {
+            for (final String line: lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
+    private CommandResponse.Accumulator run(final String... args) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run(args);
+        return rsp;
+    }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.ConfigDestination;
+import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class BulkFetchTest {
+
+    private final ConfigDestination instance = new ConfigDestination("http://src.com/", "");
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final List<String> names = new ArrayList<String>();
+    private ConfigTransfer config;
+
+    @Before
+    public void setUp() {
+
+        for (int i = 0; i < BulkFetch.CHUNK + 10; i++) {
+            names.add("job" + i);
+        }
+
+        config = Mockito.mock(ConfigTransfer.class);
+        Mockito.when(config.fetchAll(
+                Mockito.any(JenkinsInstance.class), Mockito.eq("lookup"), Mockito.anyListOf(String.class)
+        )).thenAnswer(new Answer<Map<String, CommandResponse.Accumulator>>() {
+            public Map<String, CommandResponse.Accumulator> answer(final InvocationOnMock invocation) {
+
+                @SuppressWarnings("unchecked")
+                final List<String> names = (List<String>) invocation.getArguments()[2];
+                final Map<String, CommandResponse.Accumulator> ret = new LinkedHashMap<String, CommandResponse.Accumulator>();
+                for (final String name: names) {
+                    final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+                    rsp.out().print("<" + name + "/>");
+                    ret.put(name, rsp);
+                }
+                return ret;
+            }
+        });
+    }
+
+    @Test
+    public void fetchInChunks() {
+
+        final BulkFetch bulk = bulk();
+
+        for (final String name: names) {
+            assertEquals("<" + name + "/>", bulk.take(instance.newEntity(name)).stdout());
+        }
+
+        Mockito.verify(config).fetchAll(instance.instance(), "lookup", names.subList(0, BulkFetch.CHUNK));
+        Mockito.verify(config).fetchAll(instance.instance(), "lookup", names.subList(BulkFetch.CHUNK, names.size()));
+        Mockito.verifyNoMoreInteractions(config);
+    }
+
+    @Test
+    public void includeSkippedEntities() {
+
+        final BulkFetch bulk = bulk();
+
+        assertEquals("<job3/>", bulk.take(instance.newEntity("job3")).stdout());
+        assertEquals("<job0/>", bulk.take(instance.newEntity("job0")).stdout());
+
+        Mockito.verify(config).fetchAll(instance.instance(), "lookup", names.subList(0, BulkFetch.CHUNK));
+    }
+
+    @Test
+    public void leaveUnplannedEntitiesToCaller() {
+
+        final BulkFetch bulk = bulk();
+
+        assertNull(bulk.take(instance.newEntity("unplanned")));
+        assertNull(bulk.take(new ConfigDestination("http://other.com/", "job0")));
+
+        Mockito.verifyZeroInteractions(config);
+    }
+
+    @Test
+    public void fallBackWhenUnavailable() {
+
+        Mockito.reset(config);
+        final BulkFetch bulk = bulk();
+
+        assertNull(bulk.take(instance.newEntity("job0")));
+        assertNull(bulk.take(instance.newEntity("job1")));
+
+        Mockito.verify(config).fetchAll(instance.instance(), "lookup", names.subList(0, BulkFetch.CHUNK));
+        Mockito.verifyNoMoreInteractions(config);
+        assertEquals(
+                "Unable to fetch configurations in bulk from http://src.com/, fetching one by one" + System.lineSeparator(),
+                log.toString()
+        );
+    }
+
+    private BulkFetch bulk() {
+
+        return new BulkFetch(config, instance, "lookup", names, new PrintStream(log, true));
+    }
+}
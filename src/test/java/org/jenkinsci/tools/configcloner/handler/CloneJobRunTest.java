@@ -1,13 +1,20 @@
 package org.jenkinsci.tools.configcloner.handler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Futures;
 
 import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.CommandResponse.Accumulator;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
+import org.jenkinsci.tools.configcloner.Timings;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -26,10 +33,11 @@ public class CloneJobRunTest {
     public void setUp() {
 
         config = Mockito.mock(ConfigTransfer.class);
+        Mockito.doReturn(new Timings()).when(config).timings();
         handler = Mockito.spy(new CloneJob(config));
 
-        responseCreate = CommandResponse.accumulate().returnCode(0);
-        responseUpdate = CommandResponse.accumulate().returnCode(0);
+        responseCreate = Mockito.spy(CommandResponse.accumulate().returnCode(0));
+        responseUpdate = Mockito.spy(CommandResponse.accumulate().returnCode(0));
         responseFetch = CommandResponse.accumulate().returnCode(0);
         responseFetch.out().append("job-configuration");
 
@@ -65,6 +73,87 @@ public class CloneJobRunTest {
         verifyExecuted(response(), "update-job", "create-job");
     }
 
+    @Test
+    public void closeResponsesOfSentConfiguration() {
+
+        force();
+
+        jobDoesNotExist();
+
+        response();
+
+        Mockito.verify(responseUpdate).close();
+        Mockito.verify(responseCreate).close();
+    }
+
+    @Test
+    public void parallelCloneShouldMergeResponsesInDestinationOrder() {
+
+        final ConfigDestination other = new ConfigDestination("http://other.com", "other");
+        final Accumulator failure = CommandResponse.accumulate().returnCode(42);
+        failure.err().append("other-failed");
+
+        Mockito.doReturn(Arrays.asList(destination, other)).when(handler).destinations();
+        Mockito.doReturn(failure).when(config).execute(other, "job-configuration", "create-job", other.entity());
+        Whitebox.setInternalState(handler, "parallel", 4);
+
+        final Accumulator rsp = (Accumulator) response();
+
+        assertEquals(42, rsp.returnCode());
+        assertTrue(rsp.stdout().indexOf("Sending " + destination) < rsp.stdout().indexOf("Sending " + other));
+        assertTrue(rsp.stderr().contains("other-failed"));
+    }
+
+    @Test
+    public void rejectInvalidParallelism() {
+
+        Whitebox.setInternalState(handler, "parallel", 0);
+
+        try {
+
+            response();
+            fail();
+        } catch (IllegalArgumentException ex) {
+
+            assertEquals("Invalid number of threads: 0", ex.getMessage());
+        }
+
+        Mockito.verifyZeroInteractions(config);
+    }
+
+    @Test
+    public void cloneMatchingJobs() {
+
+        final ConfigDestination pattern = new ConfigDestination("http://src.com", "team-*");
+        final ConfigDestination template = new ConfigDestination("http://dst.com", "new-*");
+        Mockito.doReturn(pattern).when(handler).source();
+        Mockito.doReturn(Arrays.asList(template)).when(handler).destinations();
+
+        final Accumulator list = CommandResponse.accumulate().returnCode(0);
+        list.out().print("team-a\nother\nteam-b\n");
+        Mockito.doReturn(list).when(config).execute(pattern, "", "list-jobs");
+
+        for (final String suffix: Arrays.asList("a", "b")) {
+
+            final ConfigDestination src = pattern.newEntity("team-" + suffix);
+            final Accumulator fetched = CommandResponse.accumulate().returnCode(0);
+            fetched.out().print("config-" + suffix);
+            Mockito.doReturn(Futures.immediateFuture(fetched)).when(config).executeAsync(src, "", "get-job", src.entity());
+
+            final ConfigDestination dst = template.newEntity("new-" + suffix);
+            Mockito.doReturn(CommandResponse.accumulate().returnCode(0))
+                    .when(config).execute(dst, "config-" + suffix, "create-job", dst.entity())
+            ;
+        }
+
+        assertTrue(response().succeeded());
+
+        Mockito.verify(config).execute(pattern, "", "list-jobs");
+        Mockito.verify(config).execute(template.newEntity("new-a"), "config-a", "create-job", "new-a");
+        Mockito.verify(config).execute(template.newEntity("new-b"), "config-b", "create-job", "new-b");
+        Mockito.verify(config, Mockito.never()).executeAsync(pattern.newEntity("other"), "", "get-job", "other");
+    }
+
     private void jobDoesNotExist() {
 
         responseUpdate.returnCode(-1);
@@ -78,6 +167,10 @@ public class CloneJobRunTest {
     public void verifyExecuted(final CommandResponse response, final String... commands) {
 
         Mockito.verify(config).execute(source, "", "get-job", source.entity());
+        Mockito.verify(config, Mockito.atLeastOnce()).timings();
+        Mockito.verify(config).warmUp(
+                Mockito.anyCollectionOf(JenkinsInstance.class), Mockito.anyLong(), Mockito.any(TimeUnit.class)
+        );
 
         for(final String cmd: commands) {
 
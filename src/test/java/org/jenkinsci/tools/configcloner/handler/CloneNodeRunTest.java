@@ -3,11 +3,14 @@ package org.jenkinsci.tools.configcloner.handler;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.jenkinsci.tools.configcloner.CommandResponse;
 import org.jenkinsci.tools.configcloner.CommandResponse.Accumulator;
 import org.jenkinsci.tools.configcloner.ConfigDestination;
 import org.jenkinsci.tools.configcloner.ConfigTransfer;
+import org.jenkinsci.tools.configcloner.JenkinsInstance;
+import org.jenkinsci.tools.configcloner.Timings;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -26,6 +29,7 @@ public class CloneNodeRunTest {
     public void setUp() {
 
         config = Mockito.mock(ConfigTransfer.class);
+        Mockito.doReturn(new Timings()).when(config).timings();
         handler = Mockito.spy(new CloneNode(config));
 
         responseCreate = CommandResponse.accumulate().returnCode(0);
@@ -78,6 +82,10 @@ public class CloneNodeRunTest {
     public void verifyExecuted(final CommandResponse response, final String... commands) {
 
         Mockito.verify(config).execute(source, "", "get-node", source.entity());
+        Mockito.verify(config, Mockito.atLeastOnce()).timings();
+        Mockito.verify(config).warmUp(
+                Mockito.anyCollectionOf(JenkinsInstance.class), Mockito.anyLong(), Mockito.any(TimeUnit.class)
+        );
 
         for(final String cmd: commands) {
 
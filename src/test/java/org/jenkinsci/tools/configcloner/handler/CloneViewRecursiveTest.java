@@ -0,0 +1,98 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.jenkinsci.tools.configcloner.CLIPool;
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.FakeJenkins;
+import org.jenkinsci.tools.configcloner.Main;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CloneViewRecursiveTest {
+
+    private static final String VIEW = "<hudson.plugins.nested__view.NestedView><name>outer</name><views>"
+            + "<hudson.model.ListView><name>first</name><jobNames><string>a</string><string>b</string></jobNames></hudson.model.ListView>"
+            + "<hudson.model.ListView><name>second</name><jobNames><string>b</string></jobNames><includeRegex>team-.*</includeRegex></hudson.model.ListView>"
+            + "</views></hudson.plugins.nested__view.NestedView>"
+    ;
+
+    private FakeJenkins src;
+    private FakeJenkins dst;
+    private CLIPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+
+        src = new FakeJenkins().start().put("view", "outer", VIEW);
+        for (final String job: new String[] {"a", "b", "team-x", "other"}) {
+            src.put("job", job, "<project><description>" + job + "</description></project>");
+        }
+        dst = new FakeJenkins().start();
+        pool = new CLIPool(FakeJenkins.cliFactory());
+    }
+
+    @After
+    public void tearDown() {
+
+        pool.close();
+        src.close();
+        dst.close();
+    }
+
+    @Test
+    public void transferContainedJobsOnce() {
+
+        final CommandResponse.Accumulator rsp = run("view", "-r", "--parallel", "4", src.locator("outer"), dst.locator("outer"));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("view", "outer"), equalTo(VIEW));
+        for (final String job: new String[] {"a", "b", "team-x"}) {
+            assertThat(dst.get("job", job), equalTo(src.get("job", job)));
+        }
+        assertThat(dst.get("job", "other"), nullValue());
+
+        final List<String> invocations = src.invocations();
+        assertEquals(1, Collections.frequency(invocations, "get-job b"));
+
+        final List<String> created = dst.invocations();
+        assertTrue(created.indexOf("create-job b") < created.indexOf("create-view outer"));
+    }
+
+    @Test
+    public void reportMissingJobs() {
+
+        src.put("view", "broken", "<hudson.model.ListView><name>broken</name><jobNames><string>missing</string></jobNames></hudson.model.ListView>");
+
+        final CommandResponse.Accumulator rsp = run("view", "-r", src.locator("broken"), dst.locator("broken"));
+
+        assertFalse(rsp.succeeded());
+        assertThat(dst.get("view", "broken"), equalTo(src.get("view", "broken")));
+    }
+
+    @Test
+    public void doNotTransferJobsByDefault() {
+
+        final CommandResponse.Accumulator rsp = run("view", src.locator("outer"), dst.locator("outer"));
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("job", "a"), nullValue());
+    }
+
+    private CommandResponse.Accumulator run(final String... args) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run(args);
+        return rsp;
+    }
+}
@@ -0,0 +1,170 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.jenkinsci.tools.configcloner.CLIFactory;
+import org.jenkinsci.tools.configcloner.CLIPool;
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.Main;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DaemonTest {
+
+    private File state;
+    private CLIPool pool;
+    private Thread daemon;
+    private final CommandResponse.Accumulator daemonRsp = CommandResponse.accumulate();
+
+    @Before
+    public void setUp() throws Exception {
+
+        state = new File(File.createTempFile("daemon", "").getPath() + ".d", "state");
+        pool = new CLIPool(CLIFactory.system());
+
+        daemon = new Thread(new Runnable() {
+            public void run() {
+                new Main(daemonRsp, pool).run("daemon", "--state", state.getPath());
+            }
+        });
+        daemon.start();
+
+        for (int i = 0; !state.exists(); i++) {
+
+            assertTrue("Daemon did not start: " + daemonRsp.stderr(), daemon.isAlive() && i < 100);
+            Thread.sleep(100);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if (daemon.isAlive()) {
+            Daemon.request(state, CommandResponse.accumulate(), "daemon", "--stop");
+        }
+        daemon.join(10000);
+        pool.close();
+    }
+
+    @Test
+    public void runCommand() throws IOException {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+
+        assertEquals(0, Daemon.request(state, rsp, "help"));
+        assertThat(rsp.stdout(), containsString("Usage:"));
+        assertThat(rsp.stdout(), containsString("daemon"));
+    }
+
+    @Test
+    public void reportFailures() throws IOException {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+
+        assertEquals(-1, Daemon.request(state, rsp, "job", "--no-such-option"));
+        assertThat(rsp.stderr(), containsString("--no-such-option"));
+    }
+
+    @Test
+    public void rejectInvalidToken() throws IOException {
+
+        final String[] response = rawRequest("wrong-token\n" + new File("").getAbsolutePath() + "\n1\nhelp\0");
+
+        assertEquals("err Invalid daemon token", response[0]);
+        assertEquals("exit -1", response[1]);
+    }
+
+    @Test
+    public void rejectStandardInput() throws IOException {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+
+        assertEquals(-1, Daemon.request(state, rsp, "batch", "-"));
+        assertThat(rsp.stderr(), containsString("Standard input is not forwarded to daemon"));
+    }
+
+    @Test
+    public void rejectClientInOtherDirectory() throws IOException {
+
+        final String token = readState()[0].split(" ")[1];
+        final File other = File.createTempFile("client", "").getParentFile();
+
+        final String[] response = rawRequest(token + "\n" + other.getAbsolutePath() + "\n1\nhelp\0");
+
+        assertThat(response[0], containsString("Daemon resolves paths against " + readState()[1]));
+        assertEquals("exit -1", response[1]);
+    }
+
+    @Test
+    public void writeWorkingDirectoryToState() throws IOException {
+
+        assertEquals(new File("").getCanonicalPath(), readState()[1]);
+    }
+
+    private String[] readState() throws IOException {
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(state), "UTF-8"));
+        try {
+
+            return new String[] { reader.readLine(), reader.readLine() };
+        } finally {
+
+            reader.close();
+        }
+    }
+
+    private String[] rawRequest(final String request) throws IOException {
+
+        final String port = readState()[0].split(" ")[0];
+        final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(port));
+        try {
+
+            final OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes("UTF-8"));
+            out.flush();
+
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            return new String[] { in.readLine(), in.readLine() };
+        } finally {
+
+            socket.close();
+        }
+    }
+
+    @Test
+    public void refuseSecondDaemon() {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run("daemon", "--state", state.getPath());
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stderr(), containsString("already running"));
+    }
+
+    @Test
+    public void stop() throws Exception {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run("daemon", "--state", state.getPath(), "--stop");
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        daemon.join(10000);
+        assertFalse(daemon.isAlive());
+        assertFalse(state.exists());
+        assertThat(daemonRsp.stdout(), containsString("Daemon stopped"));
+    }
+}
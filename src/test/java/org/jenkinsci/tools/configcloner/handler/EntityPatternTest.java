@@ -0,0 +1,66 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntityPatternTest {
+
+    @Test
+    public void plainNameIsNotPattern() {
+
+        assertNull(EntityPattern.glob("team-a"));
+    }
+
+    @Test
+    public void glob() {
+
+        final EntityPattern pattern = EntityPattern.glob("team-*.build?");
+
+        assertTrue(pattern.matches("team-a.build1"));
+        assertTrue(pattern.matches("team-.build1"));
+        assertFalse(pattern.matches("team-a.build"));
+        assertFalse(pattern.matches("other-a.build1"));
+        assertFalse(pattern.matches("team-aXbuild1"));
+
+        assertThat(pattern.rename("team-a.build1", "team-*.build?"), equalTo("team-a.build1"));
+        assertThat(pattern.rename("team-a.build1", "new-*-?"), equalTo("new-a-1"));
+        assertThat(pattern.rename("team-a.build1", "new-*"), equalTo("new-a"));
+    }
+
+    @Test
+    public void regex() {
+
+        final EntityPattern pattern = EntityPattern.regex("team-(.+)");
+
+        assertTrue(pattern.matches("team-a"));
+        assertFalse(pattern.matches("my-team-a"));
+
+        assertThat(pattern.rename("team-a", "team-(.+)"), equalTo("team-a"));
+        assertThat(pattern.rename("team-a", "new-$1"), equalTo("new-a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRegex() {
+
+        EntityPattern.regex("team-(");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTemplateMergingAllMatches() {
+
+        EntityPattern.glob("team-*").validateTemplate("single-job");
+    }
+
+    @Test
+    public void acceptTemplateReferringMatch() {
+
+        EntityPattern.glob("team-*").validateTemplate("team-*");
+        EntityPattern.glob("team-*").validateTemplate("new-*");
+        EntityPattern.regex("team-(.*)").validateTemplate("new-$1");
+    }
+}
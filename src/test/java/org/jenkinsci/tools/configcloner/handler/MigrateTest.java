@@ -0,0 +1,119 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jenkinsci.tools.configcloner.CLIPool;
+import org.jenkinsci.tools.configcloner.CommandResponse;
+import org.jenkinsci.tools.configcloner.FakeJenkins;
+import org.jenkinsci.tools.configcloner.Main;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MigrateTest {
+
+    private FakeJenkins src;
+    private FakeJenkins dst;
+    private CLIPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+
+        src = new FakeJenkins().start();
+        dst = new FakeJenkins().start();
+        pool = new CLIPool(FakeJenkins.cliFactory());
+
+        for (int i = 0; i < 20; i++) {
+            src.put("job", "job" + i, "<project><description>job" + i + "</description></project>");
+        }
+        src.put("view", "view", "<hudson.model.ListView><name>view</name></hudson.model.ListView>");
+        src.put("node", "node", "<slave><name>node</name></slave>");
+    }
+
+    @After
+    public void tearDown() {
+
+        pool.close();
+        src.close();
+        dst.close();
+    }
+
+    @Test
+    public void migrateEverything() {
+
+        final CommandResponse.Accumulator rsp = run("migrate", "--parallel", "3", "--queue", "2", src.url().toString(), dst.url().toString());
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        for (int i = 0; i < 20; i++) {
+            assertThat(dst.get("job", "job" + i), equalTo(src.get("job", "job" + i)));
+        }
+        assertThat(dst.get("view", "view"), equalTo(src.get("view", "view")));
+        assertThat(dst.get("node", "node"), equalTo(src.get("node", "node")));
+        assertThat(rsp.stdout(), containsString("Migrated 20 of 20 jobs"));
+    }
+
+    @Test
+    public void skipPrimaryView() {
+
+        src.put("view", FakeJenkins.PRIMARY_VIEW, "<hudson.model.AllView><name>all</name></hudson.model.AllView>");
+        dst.put("view", FakeJenkins.PRIMARY_VIEW, "<hudson.model.AllView/>");
+
+        final CommandResponse.Accumulator rsp = run("migrate", src.url().toString(), dst.url().toString());
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(dst.get("view", "view"), equalTo(src.get("view", "view")));
+        assertThat(dst.get("view", FakeJenkins.PRIMARY_VIEW), equalTo("<hudson.model.AllView/>"));
+        assertFalse(dst.invocations().contains("create-view " + FakeJenkins.PRIMARY_VIEW));
+        assertThat(rsp.stdout(), containsString("Migrated 1 of 1 views"));
+    }
+
+    @Test
+    public void createNodesThenJobsThenViews() {
+
+        run("migrate", src.url().toString(), dst.url().toString());
+
+        final List<String> invocations = dst.invocations();
+        assertTrue(invocations.indexOf("create-node node") < invocations.indexOf("create-job job0"));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(invocations.indexOf("create-job job" + i) < invocations.indexOf("create-view view"));
+        }
+    }
+
+    @Test
+    public void transformAndReportFailures() {
+
+        dst.put("job", "job3", "<project/>");
+
+        final CommandResponse.Accumulator rsp = run("migrate", "-e", "s/description/summary/g", src.url().toString(), dst.url().toString());
+
+        assertFalse(rsp.succeeded());
+        assertThat(rsp.stdout(), containsString("Migrated 19 of 20 jobs"));
+        assertThat(dst.get("job", "job4"), equalTo("<project><summary>job4</summary></project>"));
+        assertThat(dst.get("job", "job3"), equalTo("<project/>"));
+    }
+
+    @Test
+    public void dryRun() {
+
+        final CommandResponse.Accumulator rsp = run("migrate", "-n", "-e", "s/job1/first/", src.url().toString(), dst.url().toString());
+
+        assertTrue(rsp.stderr(), rsp.succeeded());
+        assertThat(rsp.stdout(), containsString("+<project><description>first</description></project>"));
+        assertNull(dst.get("job", "job1"));
+    }
+
+    private CommandResponse.Accumulator run(final String... args) {
+
+        final CommandResponse.Accumulator rsp = CommandResponse.accumulate();
+        new Main(rsp, pool).run(args);
+        return rsp;
+    }
+}
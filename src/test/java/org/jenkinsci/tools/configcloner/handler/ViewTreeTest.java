@@ -0,0 +1,66 @@
+package org.jenkinsci.tools.configcloner.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ViewTreeTest {
+
+    private static final String NESTED = "<hudson.plugins.nested__view.NestedView>"
+            + "<name>outer</name>"
+            + "<views>"
+            + "<hudson.model.ListView><name>first</name><jobNames><comparator class='hudson.util.CaseInsensitiveComparator'/>"
+            + "<string>a</string><string>b</string></jobNames></hudson.model.ListView>"
+            + "<hudson.plugins.nested__view.NestedView><name>inner</name><views>"
+            + "<hudson.model.ListView><name>second</name><jobNames><string>b</string></jobNames>"
+            + "<includeRegex>team-.*</includeRegex></hudson.model.ListView>"
+            + "</views></hudson.plugins.nested__view.NestedView>"
+            + "</views>"
+            + "</hudson.plugins.nested__view.NestedView>"
+    ;
+
+    @Test
+    public void listView() {
+
+        final ViewTree view = ViewTree.parse(
+                "<hudson.model.ListView><name>view</name><jobNames><string> a </string><string>b</string></jobNames></hudson.model.ListView>"
+        );
+
+        assertEquals("view", view.name());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(view.jobs(Collections.<String>emptyList())));
+        assertTrue(view.views().isEmpty());
+        assertFalse(view.usesRegex());
+    }
+
+    @Test
+    public void nestedViews() {
+
+        final ViewTree outer = ViewTree.parse(NESTED);
+
+        assertEquals("outer", outer.name());
+        assertTrue(outer.jobs(Collections.<String>emptyList()).isEmpty());
+        assertTrue(outer.usesRegex());
+
+        final ViewTree first = outer.views().get(0);
+        assertEquals("first", first.name());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(first.jobs(Collections.<String>emptyList())));
+
+        final ViewTree inner = outer.views().get(1);
+        assertEquals("inner", inner.name());
+
+        final ViewTree second = inner.views().get(0);
+        assertEquals(Arrays.asList("b", "team-x", "team-y"), new ArrayList<String>(second.jobs(Arrays.asList("b", "team-x", "other", "team-y"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidXml() {
+
+        ViewTree.parse("<hudson.model.ListView>");
+    }
+}
@@ -0,0 +1,112 @@
+package org.jenkinsci.tools.configcloner.transform;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.unix4j.Unix4j;
+
+@RunWith(JUnitParamsRunner.class)
+public class SedScriptTest {
+
+    @Test
+    public void doNothingWithoutExpressions() {
+
+        assertEquals("<a>\n</a>", apply("<a>\n</a>"));
+    }
+
+    @Test
+    public void substituteFirstOccurrenceOnEveryLine() {
+
+        assertEquals(
+                "<a>Project Job</a>\n<b>Project</b>",
+                apply("<a>Job Job</a>\n<b>Job</b>", "s/Job/Project/")
+        );
+    }
+
+    @Test
+    public void substituteGlobally() {
+
+        assertEquals(
+                "<a>Project Project</a>\n<b>Project</b>",
+                apply("<a>Job Job</a>\n<b>Job</b>", "s/Job/Project/g")
+        );
+    }
+
+    @Test
+    public void applyExpressionsInOrder() {
+
+        assertEquals(
+                "<description>Project Description</description>",
+                apply(
+                        "<description>Job Description</description>",
+                        "s/Job\\sDescription/asdfghjkl/", "s/asdf.hjkl/Project Description/"
+                )
+        );
+    }
+
+    @Test
+    public void matchLineByLine() {
+
+        assertEquals("-<a>\n-<b>", apply("<a>\n<b>\n", "s/^</-</"));
+    }
+
+    @Test
+    public void preserveLineTerminators() {
+
+        assertEquals("x\r\nx\rx\n\rx", apply("a\r\na\ra\n\ra\n", "s/a/x/"));
+    }
+
+    @Test
+    public void useCustomDelimiter() {
+
+        assertEquals("<url>http://new/</url>", apply("<url>http://old/</url>", "s|http://old/|http://new/|"));
+    }
+
+    @Test
+    public void escapedDelimiterInRegexp() {
+
+        assertEquals("<url>new</url>", apply("<url>http://old/</url>", "s/http:\\/\\/old\\//new/"));
+    }
+
+    @Test @Parameters(method = "unix4jCompatible")
+    public void behaveLikeUnix4j(final String input, final String expression) {
+
+        final String expected = Unix4j.fromString(input).sed(expression).toStringResult();
+        assertEquals(expected, apply(input, expression));
+    }
+
+    public Object[][] unix4jCompatible() {
+
+        return new String[][] {
+                {"<a>Job</a>\n", "s/Job/Project/"},
+                {"<a>Job</a>\n<b>Job</b>", "s/Job/Project/"},
+                {"<a>Job</a>\n\n", "s/Job/Project/"},
+                {"\n", "s/Job/Project/"},
+                {"", "s/Job/Project/"},
+                {"<a>Job</a>\r\n<b>Job</b>\r\n", "s/Job/Project/"},
+                {"<a>Job</a>\r<b>Job</b>\n\r<c>Job</c>", "s/Job/Project/"},
+                {"<a>Job</a>\r\n", "s|Job</a>$|Project</a>|"},
+                {"<a>Job Job</a>\n", "s/x*/-/g"},
+                {"<a>Job Job</a>\n", "s/x*/-/"},
+                {"<a>Job Job</a>\n", "s/J*/-/g"},
+                {"<a>Job Job</a>\n", "s/Job/[&]/g"},
+                {"<a>job-1</a>\n", "s/job-([0-9])/build-\\1/"},
+                {"<a>job-1</a>\n", "s/job-([0-9])/build-$1/"},
+        };
+    }
+
+    private String apply(String input, String... expressions) {
+
+        return SedScript.compile(expressions.length == 0
+                ? Collections.<String>emptyList()
+                : Arrays.asList(expressions)
+        ).apply(input);
+    }
+}
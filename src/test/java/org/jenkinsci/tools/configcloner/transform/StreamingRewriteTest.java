@@ -0,0 +1,117 @@
+package org.jenkinsci.tools.configcloner.transform;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StreamingRewriteTest {
+
+    private static final String NODE = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<slave>\n"
+            + "  <name>src-slave</name>\n"
+            + "  <description>Slave &amp; friends</description>\n"
+            + "  <nodeProperties><name>nested</name></nodeProperties>\n"
+            + "</slave>"
+    ;
+
+    @Test
+    public void replaceElementText() throws IOException {
+
+        final String result = apply(new StreamingRewrite().replaceText("/*/name", "dst-slave"), NODE);
+
+        assertThat(result, containsString("<name>dst-slave</name>"));
+        assertThat(result, not(containsString("src-slave")));
+        assertThat(result, containsString("<name>nested</name>"));
+        assertThat(result, containsString("<description>Slave &amp; friends</description>"));
+    }
+
+    @Test
+    public void replaceElementWithNestedContent() throws IOException {
+
+        final String result = apply(new StreamingRewrite().replaceText("slave/nodeProperties", ""), NODE);
+
+        assertThat(result, not(containsString("nested")));
+        assertThat(result, containsString("<name>src-slave</name>"));
+    }
+
+    @Test
+    public void rewriteInBackground() throws IOException {
+
+        final InputStream in = new StreamingRewrite().replaceText("/slave/name", "dst-slave").pipe(stream(NODE));
+
+        assertThat(read(in), containsString("<name>dst-slave</name>"));
+    }
+
+    @Test
+    public void reportFailureInBackground() throws IOException {
+
+        final InputStream in = new StreamingRewrite().pipe(stream("<slave><name>"));
+
+        try {
+            read(in);
+            fail();
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void stopRewritingOnceResultIsClosed() throws Exception {
+
+        final StringBuilder xml = new StringBuilder("<slave><name>src-slave</name>");
+        for (int i = 0; i < 20000; i++) {
+            xml.append("<label>label-").append(i).append("</label>");
+        }
+        xml.append("</slave>");
+
+        final CountDownLatch closed = new CountDownLatch(1);
+        final InputStream source = new FilterInputStream(stream(xml.toString())) {
+            @Override
+            public void close() throws IOException {
+
+                super.close();
+                closed.countDown();
+            }
+        };
+
+        // Consumer gives up without reading anything while the writer is blocked on full pipe
+        new StreamingRewrite().replaceText("/slave/name", "dst-slave").pipe(source).close();
+
+        assertTrue("Rewrite is still running", closed.await(10, TimeUnit.SECONDS));
+    }
+
+    private String apply(StreamingRewrite rewrite, String xml) throws IOException {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewrite.apply(stream(xml), out);
+        return out.toString("UTF-8");
+    }
+
+    private String read(InputStream in) throws IOException {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private InputStream stream(String xml) throws IOException {
+
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,190 @@
+package org.jenkinsci.tools.configcloner.transform;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UnifiedDiffTest {
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(buffer);
+
+    @Test
+    public void identical() {
+
+        assertFalse(new UnifiedDiff("a", "b").write("same\ntext\n", "same\ntext\n", out));
+        assertEquals("", output());
+    }
+
+    @Test
+    public void ignoreLineTerminators() {
+
+        assertFalse(new UnifiedDiff("a", "b").write("same\r\ntext\r\n", "same\ntext", out));
+    }
+
+    @Test
+    public void changedLine() {
+
+        final String original = "<project>\n  <description>Job Description</description>\n</project>\n";
+        final String revised = "<project>\n  <description>Job DSCR</description>\n</project>\n";
+
+        assertTrue(new UnifiedDiff("Original", "Transformed").write(original, revised, out));
+        assertThat(output(), equalTo(lines(
+                "--- Original",
+                "+++ Transformed",
+                "@@ -1,3 +1,3 @@",
+                " <project>",
+                "-  <description>Job Description</description>",
+                "+  <description>Job DSCR</description>",
+                " </project>"
+        )));
+    }
+
+    @Test
+    public void separateDistantChanges() {
+
+        final StringBuilder original = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            original.append(i).append('\n');
+        }
+        final String revised = original.toString().replace("\n2\n", "\ntwo\n").replace("\n18\n", "\n").concat("21\n");
+
+        new UnifiedDiff("o", "r").write(original.toString(), revised, out);
+        assertThat(output(), equalTo(lines(
+                "--- o",
+                "+++ r",
+                "@@ -1,5 +1,5 @@",
+                " 1",
+                "-2",
+                "+two",
+                " 3",
+                " 4",
+                " 5",
+                "@@ -15,6 +15,6 @@",
+                " 15",
+                " 16",
+                " 17",
+                "-18",
+                " 19",
+                " 20",
+                "+21"
+        )));
+    }
+
+    @Test
+    public void summarizeWhenTooComplex() {
+
+        final String original = "keep\na\nb\nc\nd\nkeep\n";
+        final String revised = "keep\nw\nx\ny\nz\nkeep\n";
+
+        new UnifiedDiff("o", "r", 3, 1).write(original, revised, out);
+        assertThat(output(), containsString("Too many differences to show: lines 2-5 of 6 original lines replaced by lines 2-5 of 6"));
+    }
+
+    @Test
+    public void minimalDiffOfRandomDocuments() {
+
+        final Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+
+            final String[] original = randomLines(random);
+            final String[] revised = randomLines(random);
+
+            buffer.reset();
+            new UnifiedDiff("o", "r", 1000, UnifiedDiff.DEFAULT_WORK_LIMIT).write(join(original), join(revised), out);
+
+            final StringBuilder rebuiltOriginal = new StringBuilder();
+            final StringBuilder rebuiltRevised = new StringBuilder();
+            int common = 0;
+            final String diff = output();
+            for (final String line: diff.isEmpty() ? new String[0] : diff.split("\n")) {
+
+                if (line.startsWith("---") || line.startsWith("+++") || line.startsWith("@@")) continue;
+
+                final String content = line.substring(1);
+                switch (line.charAt(0)) {
+                    case ' ':
+                        common++;
+                        rebuiltOriginal.append(content).append('\n');
+                        rebuiltRevised.append(content).append('\n');
+                    break;
+                    case '-':
+                        rebuiltOriginal.append(content).append('\n');
+                    break;
+                    case '+':
+                        rebuiltRevised.append(content).append('\n');
+                    break;
+                    default: throw new AssertionError(line);
+                }
+            }
+
+            if (diff.isEmpty()) {
+                assertEquals(join(original), join(revised));
+                continue;
+            }
+
+            assertEquals(join(original), rebuiltOriginal.toString());
+            assertEquals(join(revised), rebuiltRevised.toString());
+            assertEquals("Diff is minimal", lcs(original, revised), common);
+        }
+    }
+
+    private String[] randomLines(final Random random) {
+
+        final String[] lines = new String[1 + random.nextInt(30)];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = String.valueOf((char) ('a' + random.nextInt(4)));
+        }
+        return lines;
+    }
+
+    private static int lcs(final String[] a, final String[] b) {
+
+        final int[][] table = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i--) {
+            for (int j = b.length - 1; j >= 0; j--) {
+                table[i][j] = a[i].equals(b[j])
+                        ? table[i + 1][j + 1] + 1
+                        : Math.max(table[i + 1][j], table[i][j + 1])
+                ;
+            }
+        }
+        return table[0][0];
+    }
+
+    private static String join(final String[] lines) {
+
+        final StringBuilder builder = new StringBuilder();
+        for (final String line: lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String lines(final String... lines) {
+
+        return join(lines).replace("\n", System.lineSeparator());
+    }
+
+    private String output() {
+
+        out.flush();
+        try {
+
+            return buffer.toString("UTF-8").replace(System.lineSeparator(), "\n");
+        } catch (UnsupportedEncodingException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+}
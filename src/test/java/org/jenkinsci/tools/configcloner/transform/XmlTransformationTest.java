@@ -0,0 +1,124 @@
+package org.jenkinsci.tools.configcloner.transform;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class XmlTransformationTest {
+
+    private static final String JOB = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<project>\n"
+            + "  <scm class=\"hudson.plugins.git.GitSCM\"><url>git://old/repo.git</url></scm>\n"
+            + "  <assignedNode>old-label</assignedNode>\n"
+            + "  <publishers><mail enabled=\"true\">dev@old</mail></publishers>\n"
+            + "</project>"
+    ;
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void assignElementValue() {
+
+        final String result = XmlTransformation.compile(Arrays.asList("/project/assignedNode=new-label"), NONE).apply(JOB);
+
+        assertThat(result, containsString("<assignedNode>new-label</assignedNode>"));
+        assertThat(result, containsString("<url>git://old/repo.git</url>"));
+    }
+
+    @Test
+    public void assignUsingPredicate() {
+
+        final String result = XmlTransformation.compile(
+                Arrays.asList("//scm[@class='hudson.plugins.git.GitSCM']/url=git://new/repo.git"), NONE
+        ).apply(JOB);
+
+        assertThat(result, containsString("<url>git://new/repo.git</url>"));
+    }
+
+    @Test
+    public void assignValueContainingSeparator() {
+
+        final String result = XmlTransformation.compile(
+                Arrays.asList("//scm[@class='hudson.plugins.git.GitSCM']/url=https://host/repo?ref=main&depth=1"), NONE
+        ).apply(JOB);
+
+        assertThat(result, containsString("<url>https://host/repo?ref=main&amp;depth=1</url>"));
+    }
+
+    @Test
+    public void assignAttributeValue() {
+
+        final String result = XmlTransformation.compile(Arrays.asList("//mail/@enabled=false"), NONE).apply(JOB);
+
+        assertThat(result, containsString("enabled=\"false\""));
+    }
+
+    @Test
+    public void applyStylesheet() throws IOException {
+
+        final File xslt = stylesheet("publishers");
+
+        final String result = XmlTransformation.compile(
+                Arrays.asList("/project/assignedNode=new-label"), Arrays.asList(xslt.getPath())
+        ).apply(JOB);
+
+        assertThat(result, containsString("<assignedNode>new-label</assignedNode>"));
+        assertThat(result, not(containsString("publishers")));
+    }
+
+    @Test
+    public void readEditedStylesheet() throws IOException {
+
+        final File xslt = stylesheet("publishers");
+        XmlTransformation.compile(NONE, Arrays.asList(xslt.getPath())).apply(JOB);
+
+        write(xslt, "scm");
+        final String result = XmlTransformation.compile(NONE, Arrays.asList(xslt.getPath())).apply(JOB);
+
+        assertThat(result, containsString("publishers"));
+        assertThat(result, not(containsString("scm")));
+    }
+
+    private File stylesheet(final String removed) throws IOException {
+
+        final File xslt = File.createTempFile("config-cloner", "XmlTransformationTest.xsl");
+        xslt.deleteOnExit();
+        write(xslt, removed);
+        return xslt;
+    }
+
+    private void write(final File xslt, final String removed) throws IOException {
+
+        final FileWriter writer = new FileWriter(xslt);
+        try {
+            writer.write("<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>\n"
+                    + "  <xsl:template match='@*|node()'><xsl:copy><xsl:apply-templates select='@*|node()'/></xsl:copy></xsl:template>\n"
+                    + "  <xsl:template match='" + removed + "'/>\n"
+                    + "</xsl:stylesheet>"
+            );
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectAssignmentWithoutValue() {
+
+        XmlTransformation.compile(Arrays.asList("//scm[@class='git']"), NONE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidExpression() {
+
+        XmlTransformation.compile(Arrays.asList("//scm[=value"), NONE);
+    }
+}